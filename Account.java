@@ -0,0 +1,83 @@
+// A thin view over one slot of its engine's AccountTable
+abstract class Account {
+    protected final AccountTable table;
+    protected final String accountNumber;
+    protected final int slot;
+
+    protected Account(AccountTable table, String accountNumber, byte type, double overdraftLimit) {
+        this.table = table;
+        this.accountNumber = accountNumber;
+        this.slot = table.define(accountNumber, type, AccountTable.toMinor(overdraftLimit));
+    }
+
+    public String getAccountNumber() { return accountNumber; }
+    public double getBalance() { return AccountTable.toMajor(table.balance(slot)); }
+    long getBalanceMinor() { return table.balance(slot); }
+    void setBalance(double balance) { table.setBalance(slot, AccountTable.toMinor(balance)); }
+    void setBalanceMinor(long balance) { table.setBalance(slot, balance); }
+    public double getOverdraftLimit() { return AccountTable.toMajor(table.overdraft(slot)); }
+    public String getType() { return this.getClass().getSimpleName(); }
+    public boolean requiresTwoSignatories() { return table.twoSignatories(slot); }
+    public String getSecondSignatory() { return table.secondSignatory(slot); }
+
+    public void setSecondSignatory(String signatory) {
+        table.setSecondSignatory(slot, signatory);
+    }
+
+    // false, leaving the balance alone, if amount is under a penny, not a valid amount
+    // or would take the balance past AccountTable.MAX_MINOR
+    public boolean deposit(double amount) {
+        if (!AccountTable.isValidAmount(amount)) return false;
+        long minor = AccountTable.toMinor(amount);
+        AccountLocks.Guard guard = table.locks.lock(this);
+        try {
+            if (minor <= 0 || table.balance(slot) > AccountTable.MAX_MINOR - minor) return false;
+            table.addBalance(slot, minor);
+            return true;
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    // written as minor <= balance + overdraft so a huge amount can't wrap the check round
+    public boolean withdraw(double amount) {
+        if (!AccountTable.isValidAmount(amount)) return false;
+        long minor = AccountTable.toMinor(amount);
+        AccountLocks.Guard guard = table.locks.lock(this);
+        try {
+            if (minor > 0 && minor <= table.balance(slot) + table.overdraft(slot)) {
+                table.addBalance(slot, -minor);
+                return true;
+            }
+            return false;
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    public boolean transfer(Account target, double amount) {
+        if (this.equals(target) || !AccountTable.isValidAmount(amount)) return false;
+        long minor = AccountTable.toMinor(amount);
+        AccountLocks.Guard guard = table.locks.lock(this, target);
+        try {
+            if (minor > 0 && minor <= table.balance(slot) + table.overdraft(slot) &&
+                table.balance(target.slot) <= AccountTable.MAX_MINOR - minor) {
+                table.addBalance(target.slot, minor);
+                table.addBalance(slot, -minor);
+                return true;
+            }
+            return false;
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    // views over the same slot are the same account
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Account other && other.table == table && other.slot == slot;
+    }
+
+    @Override
+    public int hashCode() { return slot; }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// A single mutation applied by Banking, with the balances it left behind
+class AccountChange {
+    // ADJUST: a bulk balance update made outside a session, e.g. end-of-day processing
+    enum Op { CREATE, DEPOSIT, WITHDRAW, TRANSFER, ADJUST }
+
+    final Op op;
+    final String username;
+    final double amount;
+    final Account[] accounts;   // empty for ADJUST
+    final String[] accountNumbers;
+    final double[] balances;   // resulting balances, captured when the change was made
+    final long[] adjustmentsMinor;   // ADJUST only: signed change to each balance, aligned with accountNumbers
+    final Collection<Account> userAccounts;   // the user's full in-memory account set; null for ADJUST
+    private final List<AccountRow> userRows;  // ADJUST only
+
+    AccountChange(Op op, String username, Collection<Account> userAccounts, double amount, Account... accounts) {
+        this.op = op;
+        this.username = username;
+        this.userAccounts = userAccounts;
+        this.userRows = null;
+        this.adjustmentsMinor = null;
+        this.amount = amount;
+        this.accounts = accounts;
+        this.accountNumbers = new String[accounts.length];
+        this.balances = new double[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            accountNumbers[i] = accounts[i].getAccountNumber();
+            balances[i] = accounts[i].getBalance();
+        }
+    }
+
+    // every row the user owns, each at its new balance, and what moved on each
+    AccountChange(String username, List<AccountRow> userRows, long[] adjustmentsMinor) {
+        this.op = Op.ADJUST;
+        this.username = username;
+        this.userAccounts = null;
+        this.userRows = userRows;
+        this.adjustmentsMinor = adjustmentsMinor;
+        this.amount = 0.0;
+        this.accounts = new Account[0];
+        this.accountNumbers = new String[userRows.size()];
+        this.balances = new double[userRows.size()];
+        for (int i = 0; i < userRows.size(); i++) {
+            accountNumbers[i] = userRows.get(i).accountNumber;
+            balances[i] = userRows.get(i).balance;
+        }
+    }
+
+    // the user's whole account set as rows
+    List<AccountRow> userRows() {
+        if (userRows != null) return userRows;
+        List<AccountRow> rows = new ArrayList<>(userAccounts.size());
+        for (Account acc : userAccounts) rows.add(AccountRow.of(username, acc));
+        return rows;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks keyed by account number. When two accounts are locked together
+// the lower stripe is always taken first, so opposite transfers cannot deadlock.
+class AccountLocks {
+    private static final LatencyHistogram WAIT_TIME = Metrics.timer("locks.wait");
+
+    private final ReentrantLock[] stripes;
+
+    AccountLocks(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+    }
+
+    private int stripe(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    Guard lock(Account account) {
+        ReentrantLock l = stripes[stripe(account.getAccountNumber())];
+        long start = System.nanoTime();
+        l.lock();
+        WAIT_TIME.recordSince(start);
+        return new Guard(l);
+    }
+
+    Guard lock(Account a, Account b) {
+        int i = stripe(a.getAccountNumber());
+        int j = stripe(b.getAccountNumber());
+        long start = System.nanoTime();
+        if (i == j) {
+            stripes[i].lock();
+            WAIT_TIME.recordSince(start);
+            return new Guard(stripes[i]);
+        }
+        ReentrantLock first = stripes[Math.min(i, j)];
+        ReentrantLock second = stripes[Math.max(i, j)];
+        first.lock();
+        second.lock();
+        WAIT_TIME.recordSince(start);
+        return new Guard(first, second);
+    }
+
+    // every distinct stripe, ascending
+    Guard lockAll(Collection<Account> accounts) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Account a : accounts) indexes.add(stripe(a.getAccountNumber()));
+        ReentrantLock[] held = new ReentrantLock[indexes.size()];
+        int n = 0;
+        long start = System.nanoTime();
+        for (int i : indexes) {
+            stripes[i].lock();
+            held[n++] = stripes[i];
+        }
+        WAIT_TIME.recordSince(start);
+        return new Guard(held);
+    }
+
+    // Stripes held by one caller; unlock() in a finally block, like a plain Lock.
+    // unlock releases in reverse acquisition order.
+    static final class Guard {
+        private final ReentrantLock[] held;
+
+        private Guard(ReentrantLock... held) {
+            this.held = held;
+        }
+
+        void unlock() {
+            for (int i = held.length - 1; i >= 0; i--) held[i].unlock();
+        }
+    }
+}
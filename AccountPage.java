@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// One slice of a sorted account listing, plus the size of the whole listing
+public class AccountPage {
+    public enum Sort { ACCOUNT_NUMBER, TYPE, BALANCE }
+
+    private final int total;
+    private final List<AccountRow> rows;
+
+    AccountPage(int total, List<AccountRow> rows) {
+        this.total = total;
+        this.rows = rows;
+    }
+
+    public int getTotal() { return total; }
+    List<AccountRow> getRows() { return rows; }
+
+    static Comparator<AccountRow> order(Sort sort, boolean descending) {
+        Comparator<AccountRow> byNumber = Comparator.comparingLong(AccountPage::numberOf)
+            .thenComparing(r -> r.accountNumber);
+        Comparator<AccountRow> order = switch (sort) {
+            case ACCOUNT_NUMBER -> byNumber;
+            case TYPE -> Comparator.<AccountRow, String>comparing(r -> r.type).thenComparing(byNumber);
+            case BALANCE -> Comparator.<AccountRow>comparingDouble(r -> r.balance).thenComparing(byNumber);
+        };
+        return descending ? order.reversed() : order;
+    }
+
+    // ACC1001 sorts before ACC10000; anything unparseable goes last
+    private static long numberOf(AccountRow row) {
+        try {
+            return AccountTable.numberOf(row.accountNumber);
+        } catch (IllegalArgumentException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // rows already in order
+    static AccountPage slice(List<AccountRow> sorted, int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, sorted.size()));
+        int to = Math.min(sorted.size(), from + Math.max(0, limit));
+        return new AccountPage(sorted.size(), new ArrayList<>(sorted.subList(from, to)));
+    }
+
+    static AccountPage of(List<AccountRow> rows, Sort sort, boolean descending, int offset, int limit) {
+        rows.sort(order(sort, descending));
+        return slice(rows, offset, limit);
+    }
+
+    static final AccountPage EMPTY = new AccountPage(0, Collections.emptyList());
+}
@@ -0,0 +1,73 @@
+// One persisted account: the columns of a single accounts.csv line
+class AccountRow {
+    final String username;
+    final String accountNumber;
+    final String type;
+    double balance;
+    final boolean twoSignatories;
+    final String secondSignatory;
+
+    AccountRow(String username, String accountNumber, String type, double balance,
+               boolean twoSignatories, String secondSignatory) {
+        this.username = username;
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.balance = balance;
+        this.twoSignatories = twoSignatories;
+        this.secondSignatory = secondSignatory;
+    }
+
+    static AccountRow of(String username, Account acc) {
+        return new AccountRow(username, acc.getAccountNumber(), acc.getType(), acc.getBalance(),
+                              acc.requiresTwoSignatories(), acc.getSecondSignatory());
+    }
+
+    // row from the current record's fields first..first+5; null for short rows,
+    // matching the old loader which skipped them
+    static AccountRow read(CsvTokenizer t, int first) {
+        if (t.fieldCount() < first + 6) return null;
+        double balance = 0.0;
+        try { balance = t.fieldAsDouble(first + 3); } catch (NumberFormatException ignored) {}
+        return new AccountRow(t.field(first), t.field(first + 1), t.field(first + 2), balance,
+                              t.fieldAsBoolean(first + 4), t.fieldIsEmpty(first + 5) ? null : t.field(first + 5));
+    }
+
+    String toCsv() {
+        return CsvTokenizer.quote(username) + "," +
+               accountNumber + "," +
+               type + "," +
+               balance + "," +
+               twoSignatories + "," +
+               CsvTokenizer.quote(secondSignatory);
+    }
+
+    // overdraft limit of the row's account type in minor units; 0 for unknown types
+    long overdraftMinor() {
+        return AccountTable.toMinor(switch (type) {
+            case "SmallBusinessAccount" -> SmallBusinessAccount.OVERDRAFT_LIMIT;
+            case "CommunityAccount"     -> CommunityAccount.OVERDRAFT_LIMIT;
+            case "ClientAccount"        -> ClientAccount.OVERDRAFT_LIMIT;
+            default -> 0.0;
+        });
+    }
+
+    // null for unknown account types and account numbers AccountTable can't index
+    Account toAccount(AccountTable table) {
+        Account acc;
+        try {
+            acc = switch (type) {
+                case "SmallBusinessAccount" -> new SmallBusinessAccount(table, accountNumber);
+                case "CommunityAccount"     -> new CommunityAccount(table, accountNumber);
+                case "ClientAccount"        -> new ClientAccount(table, accountNumber);
+                default -> null;
+            };
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (acc != null) {
+            acc.setBalance(balance);
+            if (twoSignatories) acc.setSecondSignatory(secondSignatory);
+        }
+        return acc;
+    }
+}
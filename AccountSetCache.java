@@ -0,0 +1,106 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Account sets of users with no open session, kept so a returning user's login
+// skips the store. Least recently used sets are evicted once either the entry
+// count or the estimated heap size passes its limit (0 = no limit).
+//
+// Banking writes go through a session's own account set, so cached sets stay
+// current; anything that changes the store behind Banking's back must call
+// invalidate/invalidateAll.
+//
+// A set leaving the cache, or turned away while it is disabled, is unreachable
+// (no session holds it), so its accounts are released from the AccountTable.
+class AccountSetCache {
+    // rough heap cost of one cached account: the Account view, its key and the map node
+    private static final long BYTES_PER_ACCOUNT = 160;
+    private static final long BYTES_PER_ENTRY = 200;
+
+    private final AccountTable table;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Map<String, Account>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    final LongAdder hits = Metrics.counter("cache.hits");
+    final LongAdder misses = Metrics.counter("cache.misses");
+    final LongAdder evictions = Metrics.counter("cache.evictions");
+    final LongAdder invalidations = Metrics.counter("cache.invalidations");
+
+    AccountSetCache(AccountTable table, int maxEntries, long maxBytes) {
+        this.table = table;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    private static long weigh(String username, Map<String, Account> accounts) {
+        return BYTES_PER_ENTRY + 2L * username.length() + BYTES_PER_ACCOUNT * accounts.size();
+    }
+
+    // under the accounts' locks, so an operation already holding one finishes first
+    private void release(Map<String, Account> accounts) {
+        AccountLocks.Guard guard = table.locks.lockAll(accounts.values());
+        try {
+            for (String accNo : accounts.keySet()) table.release(accNo);
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    // removes and returns the user's set; null on a miss
+    synchronized Map<String, Account> take(String username) {
+        Map<String, Account> accounts = entries.remove(username);
+        if (accounts == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        bytes -= weigh(username, accounts);
+        return accounts;
+    }
+
+    synchronized void put(String username, Map<String, Account> accounts) {
+        if (maxEntries == 0 && maxBytes == 0) {   // cache disabled
+            release(accounts);
+            return;
+        }
+        Map<String, Account> old = entries.put(username, accounts);
+        if (old != null) bytes -= weigh(username, old);
+        bytes += weigh(username, accounts);
+        Iterator<Map.Entry<String, Map<String, Account>>> it = entries.entrySet().iterator();
+        while (it.hasNext() && ((maxEntries > 0 && entries.size() > maxEntries) || (maxBytes > 0 && bytes > maxBytes))) {
+            Map.Entry<String, Map<String, Account>> eldest = it.next();
+            bytes -= weigh(eldest.getKey(), eldest.getValue());
+            release(eldest.getValue());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized void invalidate(String username) {
+        Map<String, Account> accounts = entries.remove(username);
+        if (accounts != null) {
+            bytes -= weigh(username, accounts);
+            release(accounts);
+            invalidations.increment();
+        }
+    }
+
+    synchronized void invalidateAll() {
+        invalidations.add(entries.size());
+        entries.values().forEach(this::release);
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() { return entries.size(); }
+
+    synchronized long estimatedBytes() { return bytes; }
+
+    String stats() {
+        return String.format("entries=%d bytes~%d hits=%d misses=%d evictions=%d invalidations=%d",
+                             size(), estimatedBytes(), hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+}
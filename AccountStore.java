@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Persistence backend for Banking's accounts
+interface AccountStore {
+    // I/O done by every store in the process
+    LongAdder ROWS_READ = Metrics.counter("store.rowsRead");
+    LongAdder BYTES_READ = Metrics.counter("store.bytesRead");
+    LongAdder ROWS_WRITTEN = Metrics.counter("store.rowsWritten");
+    LongAdder BYTES_WRITTEN = Metrics.counter("store.bytesWritten");
+
+    // accounts owned by one user, in file order
+    List<AccountRow> load(String username) throws IOException;
+
+    // persist one change
+    void save(AccountChange change) throws IOException;
+
+    // IllegalArgumentException if the store couldn't hold an account with these
+    // names; Banking asks before creating the account in memory
+    default void checkNewAccount(String username, String secondSignatory) {}
+
+    // highest numeric account number in the store, 0 when empty; seeds Banking's counter
+    default int highestAccountNumber() throws IOException {
+        int max = 0;
+        for (AccountRow row : load(null)) {
+            try {
+                max = Math.max(max, AccountTable.numberOf(row.accountNumber));
+            } catch (IllegalArgumentException ignored) {}
+        }
+        return max;
+    }
+
+    // persist several changes, in order, with as few writes as the backend allows
+    default void saveAll(List<AccountChange> changes) throws IOException {
+        for (AccountChange change : changes) save(change);
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Column store behind one Banking engine's accounts. Each account number held in
+// memory gets a dense slot; slots of released accounts are reused. Money is held as
+// long minor units (pence) so balances never pick up floating-point drift; doubles
+// only appear at the API boundary.
+//
+// Columns are split into fixed-size pages, allocated as slots are handed out.
+// Growing the table only copies the page directory, so a write racing with growth
+// always lands in the live page. Slots are found by account number through an
+// open-addressing int map, so the table holds no key strings or boxed entries.
+class AccountTable {
+    static final byte SMALL_BUSINESS = 1;
+    static final byte COMMUNITY = 2;
+    static final byte CLIENT = 3;
+
+    // account numbers are ACC followed by 1 to 9 digits with no leading zero
+    static final int MAX_ACCOUNT_NUMBER = 999_999_999;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final byte TWO_SIGNATORIES = 2;
+
+    final AccountLocks locks;
+
+    private volatile long[][] balances = new long[0][];
+    private volatile int[][] overdrafts = new int[0][];
+    private volatile byte[][] types = new byte[0][];
+    private volatile byte[][] flags = new byte[0][];
+    // joint accounts are rare, so their second signatory lives off to the side
+    private final Map<Integer, String> secondSignatories = new ConcurrentHashMap<>();
+    private final SlotMap slots = new SlotMap();   // guarded by this, like the three below
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    AccountTable(AccountLocks locks) {
+        this.locks = locks;
+    }
+
+    // largest amount (and balance) whose minor units a double still holds exactly
+    static final long MAX_MINOR = 1L << 53;
+    static final double MAX_AMOUNT = MAX_MINOR / 100.0;
+
+    // what deposit, withdraw and transfer accept: finite, positive and at most MAX_AMOUNT
+    static boolean isValidAmount(double amount) {
+        return Double.isFinite(amount) && amount > 0 && amount <= MAX_AMOUNT;
+    }
+
+    static long toMinor(double amount) { return Math.round(amount * 100); }
+    static double toMajor(long minor) { return minor / 100.0; }
+
+    // ACC1001 -> 1001; IllegalArgumentException for anything but ACC<1..MAX_ACCOUNT_NUMBER>
+    // written without leading zeros, so every number has exactly one spelling
+    static int numberOf(String accountNumber) {
+        if (accountNumber == null || !accountNumber.startsWith("ACC") || accountNumber.length() == 3 ||
+            accountNumber.length() > 12 || accountNumber.charAt(3) == '0') {
+            throw new IllegalArgumentException("Unsupported account number: " + accountNumber);
+        }
+        int n = 0;
+        for (int i = 3; i < accountNumber.length(); i++) {
+            int d = accountNumber.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new IllegalArgumentException("Unsupported account number: " + accountNumber);
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    static String accountNumberOf(int number) { return "ACC" + number; }
+
+    // Slot of accountNumber. A new account starts at a zero balance with no second
+    // signatory; an account already held keeps its balance. Either way it takes
+    // the given type and overdraft.
+    int define(String accountNumber, byte type, long overdraftMinor) {
+        int number = numberOf(accountNumber);
+        int overdraft = Math.toIntExact(overdraftMinor);
+        synchronized (this) {
+            int existing = slots.get(number);
+            int slot;
+            if (existing >= 0) {
+                slot = existing;
+            } else {
+                slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+                ensureCapacity(slot);
+                balances[slot >>> PAGE_BITS][slot & PAGE_MASK] = 0;
+                flags[slot >>> PAGE_BITS][slot & PAGE_MASK] = 0;
+                secondSignatories.remove(slot);
+                slots.put(number, slot);
+            }
+            types[slot >>> PAGE_BITS][slot & PAGE_MASK] = type;
+            overdrafts[slot >>> PAGE_BITS][slot & PAGE_MASK] = overdraft;
+            return slot;
+        }
+    }
+
+    // Forget an account no session can reach any more; its slot goes to the next new one
+    synchronized void release(String accountNumber) {
+        int slot = slots.remove(numberOf(accountNumber));
+        if (slot < 0) return;
+        secondSignatories.remove(slot);
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    // accounts currently held
+    synchronized int size() { return slots.size; }
+
+    long balance(int slot) { return balances[slot >>> PAGE_BITS][slot & PAGE_MASK]; }
+    void setBalance(int slot, long minor) { balances[slot >>> PAGE_BITS][slot & PAGE_MASK] = minor; }
+
+    // ArithmeticException rather than wrapping round on overflow
+    void addBalance(int slot, long minor) {
+        long[] page = balances[slot >>> PAGE_BITS];
+        page[slot & PAGE_MASK] = Math.addExact(page[slot & PAGE_MASK], minor);
+    }
+
+    long overdraft(int slot) { return overdrafts[slot >>> PAGE_BITS][slot & PAGE_MASK]; }
+    byte type(int slot) { return types[slot >>> PAGE_BITS][slot & PAGE_MASK]; }
+
+    boolean twoSignatories(int slot) {
+        return (flags[slot >>> PAGE_BITS][slot & PAGE_MASK] & TWO_SIGNATORIES) != 0;
+    }
+
+    String secondSignatory(int slot) { return secondSignatories.get(slot); }
+
+    void setSecondSignatory(int slot, String signatory) {
+        int page = slot >>> PAGE_BITS, i = slot & PAGE_MASK;
+        if (signatory != null && !signatory.isEmpty()) {
+            secondSignatories.put(slot, signatory);
+            flags[page][i] |= TWO_SIGNATORIES;
+        } else {
+            secondSignatories.remove(slot);
+            flags[page][i] &= ~TWO_SIGNATORIES;
+        }
+    }
+
+    // caller holds this; slots are handed out in order, so at most one page is added
+    private void ensureCapacity(int slot) {
+        int pages = (slot >>> PAGE_BITS) + 1;
+        if (pages <= balances.length) return;
+        long[][] b = Arrays.copyOf(balances, pages);
+        int[][] o = Arrays.copyOf(overdrafts, pages);
+        byte[][] t = Arrays.copyOf(types, pages);
+        byte[][] f = Arrays.copyOf(flags, pages);
+        for (int p = balances.length; p < pages; p++) {
+            b[p] = new long[PAGE_SIZE];
+            o[p] = new int[PAGE_SIZE];
+            t[p] = new byte[PAGE_SIZE];
+            f[p] = new byte[PAGE_SIZE];
+        }
+        balances = b;
+        overdrafts = o;
+        types = t;
+        flags = f;
+    }
+
+    // account number -> slot, linear probing; numbers are >= 1, so 0 marks a free cell
+    private static final class SlotMap {
+        private int[] keys = new int[64];
+        private int[] values = new int[64];
+        int size;
+
+        // -1 if absent
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+            if (keys[i] == 0) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // the removed slot, or -1; later cells of the run are shifted back so lookups never stop short
+        int remove(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != key) {
+                if (keys[i] == 0) return -1;
+                i = (i + 1) & mask;
+            }
+            int removed = values[i];
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = mix(keys[j]) & mask;
+                // move j back into the hole unless its home lies cyclically in (i, j]
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            return removed;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys, oldValues = values;
+            keys = new int[capacity];
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+        }
+
+        // account numbers are mostly sequential; spread them over the table
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
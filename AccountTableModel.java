@@ -0,0 +1,120 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Table model over a paged account listing. Only pages the table actually asks
+// for are fetched, at most MAX_PAGES are kept, and a row whose page hasn't
+// arrived yet shows blank until it does. All methods run on the EDT.
+class AccountTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    interface PageSource {
+        CompletableFuture<AccountPage> fetch(AccountPage.Sort sort, boolean descending, int offset, int limit);
+    }
+
+    static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 20;
+    private static final String[] COLUMNS = {"Account", "Type", "Balance (£)", "Second signatory"};
+    private static final AccountPage.Sort[] SORTS = {
+        AccountPage.Sort.ACCOUNT_NUMBER, AccountPage.Sort.TYPE, AccountPage.Sort.BALANCE, null
+    };
+
+    private final PageSource source;
+    private final boolean showOwner;   // listing spans users: an unsortable Owner column comes first
+    private AccountPage.Sort sort = AccountPage.Sort.ACCOUNT_NUMBER;
+    private boolean descending;
+    private int rowCount;
+    private int generation;   // bumped on refresh so late replies for old data are dropped
+    private final Set<Integer> requested = new HashSet<>();
+    private final Map<Integer, List<AccountRow>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<AccountRow>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    AccountTableModel(PageSource source) {
+        this(source, false);
+    }
+
+    AccountTableModel(PageSource source, boolean showOwner) {
+        this.source = source;
+        this.showOwner = showOwner;
+    }
+
+    // index into COLUMNS and SORTS; -1 for the Owner column
+    private int field(int column) {
+        return showOwner ? column - 1 : column;
+    }
+
+    // drop everything cached and fetch again, e.g. after a change
+    void refresh() {
+        generation++;
+        pages.clear();
+        requested.clear();
+        fireTableDataChanged();
+        request(0);
+    }
+
+    // clicking the same column again flips the direction
+    void sortBy(int column) {
+        int f = column < 0 ? -1 : field(column);
+        if (f < 0 || SORTS[f] == null) return;
+        descending = SORTS[f] == sort && !descending;
+        sort = SORTS[f];
+        refresh();
+        fireTableStructureChanged();   // headers show the sort arrow
+    }
+
+    private void request(int page) {
+        if (!requested.add(page)) return;
+        int expected = generation;
+        source.fetch(sort, descending, page * PAGE_SIZE, PAGE_SIZE).whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (expected != generation) return;
+                requested.remove(page);
+                if (error != null) return;   // retried the next time the row is painted
+                pages.put(page, result.getRows());
+                if (result.getTotal() != rowCount) {
+                    rowCount = result.getTotal();
+                    fireTableDataChanged();
+                } else if (!result.getRows().isEmpty()) {
+                    fireTableRowsUpdated(page * PAGE_SIZE, page * PAGE_SIZE + result.getRows().size() - 1);
+                }
+            }));
+    }
+
+    @Override
+    public int getRowCount() { return rowCount; }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length + (showOwner ? 1 : 0); }
+
+    @Override
+    public String getColumnName(int column) {
+        int f = field(column);
+        if (f < 0) return "Owner";
+        if (SORTS[f] != sort) return COLUMNS[f];
+        return COLUMNS[f] + (descending ? " ▼" : " ▲");
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        List<AccountRow> page = pages.get(row / PAGE_SIZE);
+        if (page == null) {
+            request(row / PAGE_SIZE);
+            return null;
+        }
+        int i = row % PAGE_SIZE;
+        if (i >= page.size()) return null;
+        AccountRow r = page.get(i);
+        return switch (field(column)) {
+            case -1 -> r.username;
+            case 0 -> r.accountNumber;
+            case 1 -> r.type;
+            case 2 -> String.format("%.2f", r.balance);
+            default -> r.twoSignatories ? r.secondSignatory : "";
+        };
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Banking calls run on a background executor and returned as futures, so a UI
+// thread never waits on the store. Uses virtual threads where the JVM has them,
+// otherwise a cached pool of daemon threads.
+public class AsyncBanking {
+    private final Banking banking;
+    private final ExecutorService executor;
+
+    public AsyncBanking(Banking banking) {
+        this(banking, newExecutor("banking-io"));
+    }
+
+    public AsyncBanking(Banking banking, ExecutorService executor) {
+        this.banking = banking;
+        this.executor = executor;
+    }
+
+    // a virtual thread per task if available, else cached daemon threads named prefix-N
+    static ExecutorService newExecutor(String threadPrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, threadPrefix + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    public Banking getBanking() { return banking; }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    // completes with null if the credentials don't match
+    public CompletableFuture<Session> openSession(String username, String password) {
+        return submit(() -> banking.openSession(username, password));
+    }
+
+    public CompletableFuture<Void> closeSession(Session session) {
+        return CompletableFuture.runAsync(() -> banking.closeSession(session), executor);
+    }
+
+    public CompletableFuture<String> registerUser(String username, String password) {
+        return submit(() -> banking.registerUser(username, password));
+    }
+
+    public CompletableFuture<String> createAccount(Session session, int type, boolean twoSignatories, String secondSignatory) {
+        return submit(() -> banking.createAccount(session, type, twoSignatories, secondSignatory));
+    }
+
+    public CompletableFuture<String> getAccountsList(Session session) {
+        return submit(() -> banking.getAccountsList(session));
+    }
+
+    public CompletableFuture<AccountPage> getAccountsPage(Session session, AccountPage.Sort sort, boolean descending,
+                                                          int offset, int limit) {
+        return submit(() -> banking.getAccountsPage(session, sort, descending, offset, limit));
+    }
+
+    public CompletableFuture<AccountPage> getAllAccountsPage(Session session, AccountPage.Sort sort, boolean descending,
+                                                             int offset, int limit) {
+        return submit(() -> banking.getAllAccountsPage(session, sort, descending, offset, limit));
+    }
+
+    public CompletableFuture<Boolean> deposit(Session session, String accNo, double amount) {
+        return submit(() -> banking.deposit(session, accNo, amount));
+    }
+
+    public CompletableFuture<Boolean> withdraw(Session session, String accNo, double amount) {
+        return submit(() -> banking.withdraw(session, accNo, amount));
+    }
+
+    public CompletableFuture<Boolean> transfer(Session session, String fromAcc, String toAcc, double amount) {
+        return submit(() -> banking.transfer(session, fromAcc, toAcc, amount));
+    }
+
+    public CompletableFuture<List<BatchResult>> executeBatch(Session session, List<BatchOperation> operations) {
+        return submit(() -> banking.executeBatch(session, operations));
+    }
+
+    // Stops taking new calls; ones already submitted still finish
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,89 +1,192 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Thread-safe banking engine. Each client works through a Session; the no-Session
+// methods drive a single "current" session for the Swing front end.
+public class Banking implements Closeable {
+    private static final String USERS_FILE = "users.csv";
+    private static final String ACCOUNTS_FILE = "accounts.csv";
+    private static final String JOURNAL_FILE = "accounts.journal";
+    private static final String MAPPED_FILE = "accounts.dat";
+    private static final String HISTORY_FILE = "transactions.log";
+    private static final String ADMIN_USER = "admin";
+
+    private static final boolean DEBUG_LOAD = Boolean.getBoolean("banking.debugLoad");
+
+    private static final LatencyHistogram OPEN_SESSION_TIME = Metrics.timer("banking.openSession");
+    private static final LatencyHistogram CLOSE_SESSION_TIME = Metrics.timer("banking.closeSession");
+    private static final LatencyHistogram REGISTER_TIME = Metrics.timer("banking.registerUser");
+    private static final LatencyHistogram LOAD_TIME = Metrics.timer("banking.loadAccounts");
+    private static final LatencyHistogram SAVE_TIME = Metrics.timer("banking.saveAccounts");
+    private static final LatencyHistogram CREATE_TIME = Metrics.timer("banking.createAccount");
+    private static final LatencyHistogram LIST_TIME = Metrics.timer("banking.getAccountsList");
+    private static final LatencyHistogram PAGE_TIME = Metrics.timer("banking.getAccountsPage");
+    private static final LatencyHistogram ALL_PAGE_TIME = Metrics.timer("banking.getAllAccountsPage");
+    private static final LatencyHistogram DEPOSIT_TIME = Metrics.timer("banking.deposit");
+    private static final LatencyHistogram WITHDRAW_TIME = Metrics.timer("banking.withdraw");
+    private static final LatencyHistogram TRANSFER_TIME = Metrics.timer("banking.transfer");
+    private static final LatencyHistogram BATCH_TIME = Metrics.timer("banking.executeBatch");
+    private static final LatencyHistogram STATEMENT_TIME = Metrics.timer("banking.getStatement");
+    private static final LongAdder LOAD_FAILURES = Metrics.counter("banking.loadFailures");
+    private static final LongAdder ACCOUNTS_LOADED = Metrics.counter("banking.accountsLoaded");
+    private static final LongAdder SAVE_FAILURES = Metrics.counter("banking.saveFailures");
+    private static final LongAdder HISTORY_FAILURES = Metrics.counter("banking.historyFailures");
+
+    private final AccountStore store;
+    private final CredentialStore credentials;
+    private final TransactionHistory history;   // null when disabled
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LoadedUser> loadedUsers = new ConcurrentHashMap<>();
+    // balances and locks of the accounts this engine holds; see AccountLocks
+    private final AccountLocks locks = new AccountLocks(256);
+    private final AccountTable table = new AccountTable(locks);
+    // -Dbanking.cacheEntries / -Dbanking.cacheBytes bound it; both 0 disables it
+    private final AccountSetCache accountCache = new AccountSetCache(table, Integer.getInteger("banking.cacheEntries", 10_000),
+                                                                            Long.getLong("banking.cacheBytes", 64L << 20));
+    private final AtomicInteger accountCounter = new AtomicInteger(1001);
+    private volatile Session currentSession = null;
+    private volatile AllAccounts allAccounts;   // cached listing for getAllAccountsPage
+    private final AtomicLong storeWrites = new AtomicLong();   // invalidates allAccounts
+    // held shared while a session opens and exclusively by runEndOfDay
+    private final ReentrantReadWriteLock maintenance = new ReentrantReadWriteLock();
+
+    // account set shared by all open sessions of one user
+    private static final class LoadedUser {
+        final Map<String, Account> accounts;
+        int sessions;
+
+        LoadedUser(Map<String, Account> accounts) {
+            this.accounts = accounts;
+        }
+    }
 
-abstract class Account {
-    protected String accountNumber;
-    protected double balance;
-    protected double overdraftLimit;
-    protected boolean twoSignatories;
-    protected String secondSignatory;
-
-    public Account(String accountNumber, double overdraftLimit) {
-        this.accountNumber = accountNumber;
-        this.overdraftLimit = overdraftLimit;
-        this.balance = 0.0;
-        this.twoSignatories = false;
-        this.secondSignatory = null;
+    private static final class AllAccounts {
+        final AccountPage.Sort sort;
+        final boolean descending;
+        final List<AccountRow> rows;
+        final long writes;   // storeWrites before the store was read
+
+        AllAccounts(AccountPage.Sort sort, boolean descending, List<AccountRow> rows, long writes) {
+            this.writes = writes;
+            this.sort = sort;
+            this.descending = descending;
+            this.rows = rows;
+        }
     }
 
-    public String getAccountNumber() { return accountNumber; }
-    public double getBalance() { return balance; }
-    public String getType() { return this.getClass().getSimpleName(); }
-    public boolean requiresTwoSignatories() { return twoSignatories; }
-    public String getSecondSignatory() { return secondSignatory; }
+    public Banking() {
+        this(defaultStore());
+    }
 
-    // CORRECT: assign parameter -> field
-    public void setSecondSignatory(String signatory) {
-        this.secondSignatory = signatory;
-        this.twoSignatories = signatory != null && !signatory.isEmpty();
+    public Banking(AccountStore store) {
+        this(store, new File("."));
     }
 
-    public void deposit(double amount) {
-        if (amount > 0) balance += amount;
+    // users.csv (and accounts.csv, if missing) live in dataDir rather than the working directory
+    public Banking(AccountStore store, File dataDir) {
+        this.store = store;
+        ensureFilesExist(dataDir);
+        this.credentials = new CredentialStore(new File(dataDir, USERS_FILE).getPath());
+        this.history = openHistory(dataDir);
+        // don't load accounts here — accounts are loaded per user when a session opens
+        seedAccountCounter();
+        Metrics.startConfiguredReporter();
     }
 
-    public boolean withdraw(double amount) {
-        if (amount > 0 && balance - amount >= -overdraftLimit) {
-            balance -= amount;
-            return true;
+    // account numbers are global, so continue from the highest one any user holds
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void seedAccountCounter() {
+        try {
+            accountCounter.accumulateAndGet(store.highestAccountNumber() + 1, Math::max);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return false;
     }
 
-    public boolean transfer(Account target, double amount) {
-        if (this == target) return false;
-        if (amount > 0 && balance - amount >= -overdraftLimit) {
-            this.balance -= amount;
-            target.balance += amount;
-            return true;
+    // transactions.log in dataDir; -Dbanking.history=false turns history off.
+    // History is only forced to disk when the store itself is (journal and mapped).
+    @SuppressWarnings("CallToPrintStackTrace")
+    private static TransactionHistory openHistory(File dataDir) {
+        if ("false".equals(System.getProperty("banking.history"))) return null;
+        String kind = System.getProperty("banking.store", "csv");
+        boolean fsync = !"false".equals(System.getProperty("banking.fsync"))
+                && ("journal".equalsIgnoreCase(kind) || "mapped".equalsIgnoreCase(kind));
+        try {
+            return new TransactionHistory(new File(dataDir, HISTORY_FILE).getPath(), fsync);
+        } catch (IOException e) {
+            e.printStackTrace();   // carry on without history
+            return null;
         }
-        return false;
     }
-}
-
-// Account Types
-class SmallBusinessAccount extends Account { public SmallBusinessAccount(String accNo) { super(accNo, 1000.0); } }
-class CommunityAccount extends Account     { public CommunityAccount(String accNo) { super(accNo, 2500.0); } }
-class ClientAccount extends Account        { public ClientAccount(String accNo) { super(accNo, 1500.0); } }
 
-public class Banking {
-    private static final String USERS_FILE = "users.csv";
-    private static final String ACCOUNTS_FILE = "accounts.csv";
-
-    private Map<String, Account> accounts = new HashMap<>();
-    private int accountCounter = 1001;
-    private String loggedInUser = null;
+    // -Dbanking.store=journal appends changes to accounts.journal instead of rewriting accounts.csv;
+    // -Dbanking.compactSeconds sets how often the journal is folded into a new snapshot.
+    // -Dbanking.store=mapped keeps accounts in accounts.dat, importing accounts.csv on first use.
+    // -Dbanking.store=sharded splits accounts.csv into -Dbanking.shards files by username.
+    @SuppressWarnings("CallToPrintStackTrace")
+    static AccountStore defaultStore() {
+        CsvAccountStore csv = new CsvAccountStore(ACCOUNTS_FILE);
+        boolean fsync = !"false".equals(System.getProperty("banking.fsync"));
+        String kind = System.getProperty("banking.store", "csv");
+        if ("mapped".equalsIgnoreCase(kind)) {
+            try {
+                boolean migrate = !new File(MAPPED_FILE).exists() && csv.getFile().exists();
+                MappedAccountStore mapped = new MappedAccountStore(MAPPED_FILE, fsync);
+                if (migrate) mapped.importCsv(csv);
+                return withGroupCommit(mapped);
+            } catch (IOException e) {
+                e.printStackTrace();   // fall back to CSV
+            }
+        }
+        if ("sharded".equalsIgnoreCase(kind)) {
+            try {
+                return withGroupCommit(new ShardedAccountStore("accounts", Integer.getInteger("banking.shards", 8), csv));
+            } catch (IOException e) {
+                e.printStackTrace();   // fall back to CSV
+            }
+        }
+        if ("journal".equalsIgnoreCase(kind)) {
+            JournaledAccountStore journal;
+            try {
+                journal = new JournaledAccountStore(csv, JOURNAL_FILE, fsync);
+            } catch (IOException e) {
+                // unlike mapped or sharded, don't fall back: the journal holds changes accounts.csv lacks
+                throw new UncheckedIOException(e);
+            }
+            long interval = Long.getLong("banking.compactSeconds", 60);
+            if (interval > 0) new JournalCompactor(journal, interval, Long.getLong("banking.compactMinBytes", 64 * 1024));
+            return withGroupCommit(journal);
+        }
+        return withGroupCommit(csv);
+    }
 
-    public Banking() {
-        ensureFilesExist();
-        // don't load accounts here — loggedInUser is null now; accounts will be loaded after login
+    // -Dbanking.groupCommitMillis=N merges concurrent saves arriving within N ms into one write
+    private static AccountStore withGroupCommit(AccountStore store) {
+        long millis = Long.getLong("banking.groupCommitMillis", 0);
+        if (millis <= 0) return store;
+        return new GroupCommitAccountStore(store, millis, Integer.getInteger("banking.groupCommitMaxSize", 1024));
     }
 
     @SuppressWarnings("CallToPrintStackTrace")
-    private void ensureFilesExist() {
+    private void ensureFilesExist(File dataDir) {
         try {
-            File users = new File(USERS_FILE);
+            File users = new File(dataDir, USERS_FILE);
             if (!users.exists()) {
                 try (PrintWriter pw = new PrintWriter(new FileWriter(users))) {
                     pw.println("username,password");
-                    pw.println("admin,1234");
+                    pw.println(ADMIN_USER + ",1234");
                 }
             }
 
-            File accountsFile = new File(ACCOUNTS_FILE);
+            File accountsFile = new File(dataDir, ACCOUNTS_FILE);
             if (!accountsFile.exists()) {
                 try (PrintWriter pw = new PrintWriter(new FileWriter(accountsFile))) {
-                    pw.println("username,accountNumber,type,balance,twoSignatories,secondSignatory");
+                    pw.println(CsvAccountStore.HEADER);
                 }
             }
         } catch (IOException e) {
@@ -91,249 +194,508 @@ public class Banking {
         }
     }
 
-    @SuppressWarnings("CallToPrintStackTrace")
-    public boolean login(String username, String password) {
-        try (BufferedReader br = new BufferedReader(new FileReader(USERS_FILE))) {
-            String line;
-            br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",", -1);
-                if (parts.length >= 2 &&
-                    parts[0].trim().equals(username.trim()) &&
-                    parts[1].trim().equals(password.trim())) {
-                    loggedInUser = username.trim();
-                    loadAccounts();   // load accounts for this user now that loggedInUser set
-                    return true;
+    // null if the credentials don't match, or while end-of-day processing runs
+    public Session openSession(String username, String password) {
+        long start = System.nanoTime();
+        if (!maintenance.readLock().tryLock()) return null;
+        try {
+            if (!credentials.matches(username, password)) return null;
+            String user = username.trim();
+            LoadedUser loaded = loadedUsers.compute(user, (k, v) -> {
+                if (v == null) {
+                    // first session for this user: reuse the set from its last visit, else load it
+                    Map<String, Account> cached = accountCache.take(k);
+                    v = new LoadedUser(cached != null ? cached : new ConcurrentHashMap<>());
+                    if (cached == null) loadAccounts(k, v.accounts);
                 }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+                v.sessions++;
+                return v;
+            });
+            Session session = new Session(user, loaded.accounts);
+            sessions.put(session.getToken(), session);
+            return session;
+        } finally {
+            maintenance.readLock().unlock();
+            OPEN_SESSION_TIME.recordSince(start);
         }
-        return false;
     }
 
-    public void logout() {
-        loggedInUser = null;
-        accounts.clear();
+    public Session getSession(String token) {
+        return getSession(token, Long.MAX_VALUE);
     }
 
-    @SuppressWarnings("CallToPrintStackTrace")
-    public String registerUser(String username, String password) {
-        if (usernameExists(username)) return "Username already exists.";
-        try (FileWriter fw = new FileWriter(USERS_FILE, true)) {
-            fw.write(username + "," + password + "\n");
-            return "User registered: " + username;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error registering user.";
+    // null once the session has gone maxIdleMillis unused, closing it; otherwise marks it used
+    public Session getSession(String token, long maxIdleMillis) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) return null;
+        if (session.idleNanos() / 1_000_000 >= maxIdleMillis) {
+            closeSession(session);
+            return null;
         }
+        session.touch();
+        return session;
     }
 
-    @SuppressWarnings("CallToPrintStackTrace")
-    private boolean usernameExists(String username) {
-        try (BufferedReader br = new BufferedReader(new FileReader(USERS_FILE))) {
-            String line;
-            br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",", -1);
-                if (parts.length >= 1 && parts[0].equals(username)) return true;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    // close every session unused for maxIdleMillis; returns how many
+    public int closeIdleSessions(long maxIdleMillis) {
+        int closed = 0;
+        for (Session session : sessions.values()) {
+            if (session.idleNanos() / 1_000_000 < maxIdleMillis) continue;
+            closeSession(session);
+            closed++;
         }
-        return false;
+        return closed;
     }
 
-    // Load accounts for the currently logged-in user
-    private void loadAccounts() {
-        accounts.clear();
-        accountCounter = Math.max(1001, accountCounter); // keep baseline
+    // Writes the history index so the next start doesn't rescan the log. The store
+    // belongs to whoever passed it in and stays open.
+    @Override
+    public void close() throws IOException {
+        if (history != null) history.close();
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ACCOUNTS_FILE))) {
-            String line = br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                // preserve trailing empty fields
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+    public void closeSession(Session session) {
+        long start = System.nanoTime();
+        try {
+            if (session == null || sessions.remove(session.getToken()) == null) return;
+            session.close();
+            loadedUsers.computeIfPresent(session.getUsername(), (k, v) -> {
+                if (--v.sessions > 0) return v;
+                accountCache.put(k, v.accounts);   // last session gone; keep the set for next time
+                return null;
+            });
+        } finally {
+            CLOSE_SESSION_TIME.recordSince(start);
+        }
+    }
 
-                String username = parts[0];
-                if (loggedInUser == null || !username.equals(loggedInUser)) continue;
+    // Drop a logged-out user's cached accounts, e.g. after the store was changed
+    // outside Banking; null drops every user's
+    public void invalidateCachedAccounts(String username) {
+        if (username == null) accountCache.invalidateAll();
+        else accountCache.invalidate(username.trim());
+    }
 
-                String accNo = parts[1];
-                String type = parts[2];
-                double balance = 0.0;
-                try { balance = Double.parseDouble(parts[3]); } catch (NumberFormatException ignored) {}
-                boolean twoSignatories = Boolean.parseBoolean(parts[4]);
-                String secondSignatory = parts[5].isEmpty() ? null : parts[5];
+    public String getCacheStats() { return accountCache.stats(); }
 
-                Account acc = switch (type) {
-                    case "SmallBusinessAccount" -> new SmallBusinessAccount(accNo);
-                    case "CommunityAccount"     -> new CommunityAccount(accNo);
-                    case "ClientAccount"        -> new ClientAccount(accNo);
-                    default -> null;
-                };
+    // Runs the batch against this engine's store. It needs the store to itself, so it is
+    // refused while any session is open and logins fail until it finishes; cached
+    // account sets hold the old balances and are dropped.
+    public EndOfDayBatch.Report runEndOfDay(EndOfDayBatch batch, String runId) throws IOException {
+        maintenance.writeLock().lock();
+        try {
+            if (!sessions.isEmpty()) throw new IllegalStateException(sessions.size() + " session(s) still open");
+            return batch.run(store, runId, history);
+        } finally {
+            accountCache.invalidateAll();
+            storeWrites.incrementAndGet();
+            maintenance.writeLock().unlock();
+        }
+    }
+
+    public boolean login(String username, String password) {
+        Session session = openSession(username, password);
+        if (session == null) return false;
+        closeSession(currentSession);
+        currentSession = session;
+        return true;
+    }
+
+    public void logout() {
+        closeSession(currentSession);
+        currentSession = null;
+    }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    public String registerUser(String username, String password) {
+        long start = System.nanoTime();
+        try {
+            // the admin account only comes from a fresh users.csv, never from sign-up
+            if (username != null && ADMIN_USER.equalsIgnoreCase(username.trim())) return "Username already exists.";
+            if (!credentials.register(username, password)) return "Username already exists.";
+            return "User registered: " + username;
+        } catch (IllegalArgumentException e) {
+            return "Error registering user: " + e.getMessage();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Error registering user.";
+        } finally {
+            REGISTER_TIME.recordSince(start);
+        }
+    }
 
+    // Load accounts for one user
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void loadAccounts(String username, Map<String, Account> accounts) {
+        long start = System.nanoTime();
+        try {
+            for (AccountRow row : store.load(username)) {
+                Account acc = row.toAccount(table);
                 if (acc != null) {
-                    acc.balance = balance;
-                    if (twoSignatories) acc.setSecondSignatory(secondSignatory);
-                    accounts.put(accNo, acc);
+                    accounts.put(row.accountNumber, acc);
 
                     // ensure accountCounter continues from highest ACC number
-                    try {
-                        int n = Integer.parseInt(accNo.replaceFirst("^ACC", ""));
-                        accountCounter = Math.max(accountCounter, n + 1);
-                    } catch (NumberFormatException ignored) {}
+                    accountCounter.accumulateAndGet(AccountTable.numberOf(row.accountNumber) + 1, Math::max);
                 }
             }
         } catch (IOException e) {
+            LOAD_FAILURES.increment();
             e.printStackTrace();
+        } finally {
+            ACCOUNTS_LOADED.add(accounts.size());
+            LOAD_TIME.recordSince(start);
         }
 
-        // debug: print loaded accounts to console
-        System.out.println("=== Loading accounts for " + loggedInUser + " (" + accounts.size() + ") ===");
+        // debug: print loaded accounts to console (-Dbanking.debugLoad=true turns it on)
+        if (!DEBUG_LOAD) return;
+        System.out.println("=== Loading accounts for " + username + " (" + accounts.size() + ") ===");
         for (Account a : accounts.values()) {
             System.out.println("  " + a.getAccountNumber() + " " + a.getType() + " bal=" + a.getBalance() +
                                (a.requiresTwoSignatories() ? " | joint:" + a.getSecondSignatory() : ""));
         }
+        AccountStore backend = store instanceof GroupCommitAccountStore group ? group.getDelegate() : store;
+        if (backend instanceof JournaledAccountStore journal) {
+            System.out.println("  recovery: " + journal.recoveryStats());
+        }
     }
 
-    // Save all users' accounts (merge current user into file)
-    private void saveAccounts() {
-        Map<String, List<Account>> allAccounts = new HashMap<>();
+    // Persist one change through the configured store.
+    // Callers hold the account locks, so changes reach the store in the order they were applied.
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void saveAccounts(AccountChange change) {
+        long start = System.nanoTime();
+        try {
+            store.save(change);
+        } catch (IOException e) {
+            SAVE_FAILURES.increment();
+            e.printStackTrace();
+        } finally {
+            storeWrites.incrementAndGet();
+            SAVE_TIME.recordSince(start);
+        }
+        recordHistory(List.of(change));
+    }
 
-        // read existing file into the map (use split with -1)
-        try (BufferedReader br = new BufferedReader(new FileReader(ACCOUNTS_FILE))) {
-            String line = br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+    // the changes are applied in memory whether or not the store took them, so history follows memory
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void recordHistory(List<AccountChange> changes) {
+        if (history == null) return;
+        try {
+            history.record(changes);
+        } catch (IOException e) {
+            HISTORY_FAILURES.increment();
+            e.printStackTrace();
+        }
+    }
 
-                String username = parts[0];
-                String accNo = parts[1];
-                String type = parts[2];
-                double balance = 0.0;
-                try { balance = Double.parseDouble(parts[3]); } catch (NumberFormatException ignored) {}
-                boolean twoSignatories = Boolean.parseBoolean(parts[4]);
-                String secondSignatory = parts[5].isEmpty() ? null : parts[5];
+    // Create account
+    public String createAccount(int type, boolean twoSignatories, String secondSignatory) {
+        Session session = currentSession;
+        if (session == null) return "Not logged in.";
+        return createAccount(session, type, twoSignatories, secondSignatory);
+    }
 
+    public String createAccount(Session session, int type, boolean twoSignatories, String secondSignatory) {
+        long start = System.nanoTime();
+        try {
+            if (session.isClosed()) return "Not logged in.";
+            Map<String, Account> accounts = session.accountMap();
+            // one creation at a time per user, so the "one account per type" check holds
+            synchronized (accounts) {
+                boolean exists = accounts.values().stream()
+                    .anyMatch(acc -> (type == 1 && acc instanceof SmallBusinessAccount) ||
+                                     (type == 2 && acc instanceof CommunityAccount) ||
+                                     (type == 3 && acc instanceof ClientAccount));
+                if (exists) return "Account of this type already exists.";
+                if (type < 1 || type > 3) return "Invalid account type.";
+                try {
+                    store.checkNewAccount(session.getUsername(), twoSignatories ? secondSignatory : null);
+                } catch (IllegalArgumentException e) {
+                    return "Cannot create account: " + e.getMessage();
+                }
+
+                String accNo = "ACC" + accountCounter.getAndIncrement();
                 Account acc = switch (type) {
-                    case "SmallBusinessAccount" -> new SmallBusinessAccount(accNo);
-                    case "CommunityAccount"     -> new CommunityAccount(accNo);
-                    case "ClientAccount"        -> new ClientAccount(accNo);
-                    default -> null;
+                    case 1 -> new SmallBusinessAccount(table, accNo);
+                    case 2 -> new CommunityAccount(table, accNo);
+                    default -> new ClientAccount(table, accNo);
                 };
-
-                if (acc != null) {
-                    acc.balance = balance;
-                    if (twoSignatories) acc.setSecondSignatory(secondSignatory);
-                    allAccounts.computeIfAbsent(username, k -> new ArrayList<>()).add(acc);
+                if (twoSignatories) acc.setSecondSignatory(secondSignatory);
+                accounts.put(accNo, acc);
+
+                // persist and keep in-memory consistent
+                AccountLocks.Guard guard = locks.lock(acc);
+                try {
+                    saveAccounts(new AccountChange(AccountChange.Op.CREATE, session.getUsername(), session.getAccounts(), 0.0, acc));
+                } finally {
+                    guard.unlock();
                 }
+
+                return "Created " + acc.getType() + " account: " + accNo +
+                       (twoSignatories ? " | Joint account with second signatory: " + secondSignatory : "");
             }
-        } catch (IOException e) {
-            // file may not exist yet; we'll create it when writing
+        } finally {
+            CREATE_TIME.recordSince(start);
+        }
+    }
+
+    public String getAccountsList() {
+        Session session = currentSession;
+        if (session == null) return "No accounts created.";
+        return getAccountsList(session);
+    }
+
+    public String getAccountsList(Session session) {
+        long start = System.nanoTime();
+        try {
+            Collection<Account> accounts = session.getAccounts();
+            if (session.isClosed() || accounts.isEmpty()) return "No accounts created.";
+            StringBuilder sb = new StringBuilder();
+            accounts.forEach(v -> sb.append(v.getAccountNumber())
+                .append(" | Type: ").append(v.getType())
+                .append(" | Balance: £").append(v.getBalance())
+                .append(v.requiresTwoSignatories() ? " | Joint (second: " + v.getSecondSignatory() + ")" : "")
+                .append("\n"));
+            return sb.toString();
+        } finally {
+            LIST_TIME.recordSince(start);
         }
+    }
 
-        // replace this user's group with the current in-memory accounts
-        if (loggedInUser != null) {
-            allAccounts.put(loggedInUser, new ArrayList<>(accounts.values()));
+    // One page of the session's accounts in the given order; rows are snapshots
+    public AccountPage getAccountsPage(Session session, AccountPage.Sort sort, boolean descending, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (session.isClosed()) return AccountPage.EMPTY;
+            List<AccountRow> rows = new ArrayList<>();
+            for (Account acc : session.getAccounts()) rows.add(AccountRow.of(session.getUsername(), acc));
+            return AccountPage.of(rows, sort, descending, offset, limit);
+        } finally {
+            PAGE_TIME.recordSince(start);
         }
+    }
+
+    // the user created with a fresh users.csv; only it may list every account
+    public boolean isAdmin(Session session) {
+        return session != null && !session.isClosed() && ADMIN_USER.equals(session.getUsername());
+    }
 
-        // now write everything back to the CSV
-        try (PrintWriter pw = new PrintWriter(new FileWriter(ACCOUNTS_FILE))) {
-            pw.println("username,accountNumber,type,balance,twoSignatories,secondSignatory");
-            for (Map.Entry<String, List<Account>> entry : allAccounts.entrySet()) {
-                String user = entry.getKey();
-                for (Account acc : entry.getValue()) {
-                    pw.println(user + "," +
-                               acc.getAccountNumber() + "," +
-                               acc.getType() + "," +
-                               acc.getBalance() + "," +
-                               acc.requiresTwoSignatories() + "," +
-                               (acc.getSecondSignatory() != null ? acc.getSecondSignatory() : ""));
+    // One page of every account in the store, for an admin session; empty for anyone
+    // else. The sorted listing is kept until the next write or until another order is
+    // asked for, so paging through it reads the store once.
+    @SuppressWarnings("CallToPrintStackTrace")
+    public AccountPage getAllAccountsPage(Session session, AccountPage.Sort sort, boolean descending,
+                                          int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (!isAdmin(session)) return AccountPage.EMPTY;
+            AllAccounts all = allAccounts;
+            long writes = storeWrites.get();
+            if (all == null || all.writes != writes || all.sort != sort || all.descending != descending) {
+                try {
+                    List<AccountRow> rows = new ArrayList<>(store.load(null));
+                    rows.sort(AccountPage.order(sort, descending));
+                    all = new AllAccounts(sort, descending, rows, writes);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return AccountPage.EMPTY;
                 }
+                allAccounts = all;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return AccountPage.slice(all.rows, offset, limit);
+        } finally {
+            ALL_PAGE_TIME.recordSince(start);
         }
     }
 
-    // Create account
-    public String createAccount(int type, boolean twoSignatories, String secondSignatory) {
-        if (loggedInUser == null) return "Not logged in.";
-
-        boolean exists = accounts.values().stream()
-            .anyMatch(acc -> (type == 1 && acc instanceof SmallBusinessAccount) ||
-                             (type == 2 && acc instanceof CommunityAccount) ||
-                             (type == 3 && acc instanceof ClientAccount));
-        if (exists) return "Account of this type already exists.";
-
-        String accNo = "ACC" + accountCounter++;
-        Account acc = switch (type) {
-            case 1 -> new SmallBusinessAccount(accNo);
-            case 2 -> new CommunityAccount(accNo);
-            case 3 -> new ClientAccount(accNo);
-            default -> null;
-        };
-        if (acc != null) {
-            if (twoSignatories) acc.setSecondSignatory(secondSignatory);
-            accounts.put(accNo, acc);
-
-            // persist and keep in-memory consistent
-            saveAccounts();
-            // no need to call loadAccounts() — accounts already up-to-date in-memory
-
-            return "Created " + acc.getType() + " account: " + accNo +
-                   (twoSignatories ? " | Joint account with second signatory: " + secondSignatory : "");
+    // Entries of one of the session's accounts posted in [fromMillis, toMillis), newest
+    // first; null if the session doesn't hold accNo, history is off or can't be read
+    @SuppressWarnings("CallToPrintStackTrace")
+    public TransactionHistory.Page getStatement(Session session, String accNo, long fromMillis, long toMillis,
+                                                int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (history == null || session.getAccount(accNo) == null) return null;
+            return history.statement(accNo, fromMillis, toMillis, offset, limit);
+        } catch (IOException e) {
+            HISTORY_FAILURES.increment();
+            e.printStackTrace();
+            return null;
+        } finally {
+            STATEMENT_TIME.recordSince(start);
         }
-        return "Invalid account type.";
     }
 
-    public String getAccountsList() {
-        if (accounts.isEmpty()) return "No accounts created.";
-        StringBuilder sb = new StringBuilder();
-        accounts.forEach((k, v) -> sb.append(k)
-            .append(" | Type: ").append(v.getType())
-            .append(" | Balance: £").append(v.getBalance())
-            .append(v.requiresTwoSignatories() ? " | Joint (second: " + v.getSecondSignatory() + ")" : "")
-            .append("\n"));
-        return sb.toString();
+    public boolean deposit(String accNo, double amount) {
+        Session session = currentSession;
+        return session != null && deposit(session, accNo, amount);
     }
 
-    public boolean deposit(String accNo, double amount) {
-        Account acc = accounts.get(accNo);
-        if (acc != null) {
-            acc.deposit(amount);
-            saveAccounts();
-            return true;
+    public boolean deposit(Session session, String accNo, double amount) {
+        long start = System.nanoTime();
+        try {
+            Account acc = session.getAccount(accNo);
+            if (acc != null) {
+                AccountLocks.Guard guard = locks.lock(acc);
+                try {
+                    if (acc.deposit(amount)) {
+                        saveAccounts(new AccountChange(AccountChange.Op.DEPOSIT, session.getUsername(), session.getAccounts(), amount, acc));
+                        return true;
+                    }
+                } finally {
+                    guard.unlock();
+                }
+            }
+            return false;
+        } finally {
+            DEPOSIT_TIME.recordSince(start);
         }
-        return false;
     }
 
     public boolean withdraw(String accNo, double amount) {
-        Account acc = accounts.get(accNo);
-        if (acc != null) {
-            // restriction: block withdraw if joint (requires second signatory approval)
-            if (acc.requiresTwoSignatories()) return false;
-            if (acc.withdraw(amount)) {
-                saveAccounts();
-                return true;
+        Session session = currentSession;
+        return session != null && withdraw(session, accNo, amount);
+    }
+
+    public boolean withdraw(Session session, String accNo, double amount) {
+        long start = System.nanoTime();
+        try {
+            Account acc = session.getAccount(accNo);
+            if (acc != null) {
+                // restriction: block withdraw if joint (requires second signatory approval)
+                if (acc.requiresTwoSignatories()) return false;
+                AccountLocks.Guard guard = locks.lock(acc);
+                try {
+                    if (acc.withdraw(amount)) {
+                        saveAccounts(new AccountChange(AccountChange.Op.WITHDRAW, session.getUsername(), session.getAccounts(), amount, acc));
+                        return true;
+                    }
+                } finally {
+                    guard.unlock();
+                }
             }
+            return false;
+        } finally {
+            WITHDRAW_TIME.recordSince(start);
         }
-        return false;
     }
 
     public boolean transfer(String fromAcc, String toAcc, double amount) {
-        Account from = accounts.get(fromAcc);
-        Account to = accounts.get(toAcc);
-        if (from == null || to == null) return false;
+        Session session = currentSession;
+        return session != null && transfer(session, fromAcc, toAcc, amount);
+    }
+
+    public boolean transfer(Session session, String fromAcc, String toAcc, double amount) {
+        long start = System.nanoTime();
+        try {
+            Account from = session.getAccount(fromAcc);
+            Account to = session.getAccount(toAcc);
+            if (from == null || to == null) return false;
+
+            // restriction: block if either account is joint
+            if (from.requiresTwoSignatories() || to.requiresTwoSignatories()) return false;
+
+            if (from.equals(to)) return false;
+            AccountLocks.Guard guard = locks.lock(from, to);
+            try {
+                if (from.transfer(to, amount)) {
+                    saveAccounts(new AccountChange(AccountChange.Op.TRANSFER, session.getUsername(), session.getAccounts(), amount, from, to));
+                    return true;
+                }
+            } finally {
+                guard.unlock();
+            }
+            return false;
+        } finally {
+            TRANSFER_TIME.recordSince(start);
+        }
+    }
 
-        // restriction: block if either account is joint
-        if (from.requiresTwoSignatories() || to.requiresTwoSignatories()) return false;
+    // Validate and apply every operation in memory, then persist the applied ones
+    // with a single store write. Results line up with operations by index. If the
+    // store write fails, the touched balances are put back and every applied
+    // operation is reported failed.
+    @SuppressWarnings("CallToPrintStackTrace")
+    public List<BatchResult> executeBatch(Session session, List<BatchOperation> operations) {
+        long start = System.nanoTime();
+        try {
+            List<BatchResult> results = new ArrayList<>(operations.size());
+            List<AccountChange> changes = new ArrayList<>();
+            Set<Account> touched = new HashSet<>();
+            for (BatchOperation op : operations) {
+                Account acc = session.getAccount(op.accountNumber);
+                if (acc != null) touched.add(acc);
+                Account target = session.getAccount(op.targetAccountNumber);
+                if (target != null) touched.add(target);
+            }
 
-        if (from.transfer(to, amount)) {
-            saveAccounts();
-            return true;
+            // hold every touched account until the batch is persisted, so no other
+            // change to them can reach the store in between
+            AccountLocks.Guard guard = locks.lockAll(touched);
+            try {
+                Map<Account, Long> before = new HashMap<>();
+                for (Account acc : touched) before.put(acc, acc.getBalanceMinor());
+
+                for (BatchOperation op : operations) {
+                    Account acc = session.getAccount(op.accountNumber);
+                    if (acc == null) { results.add(BatchResult.failed("Unknown account " + op.accountNumber)); continue; }
+                    if (!AccountTable.isValidAmount(op.amount)) {
+                        results.add(BatchResult.failed(String.format("Amount must be positive and at most %.2f", AccountTable.MAX_AMOUNT)));
+                        continue;
+                    }
+
+                    switch (op.type) {
+                        case DEPOSIT -> {
+                            if (!acc.deposit(op.amount)) results.add(BatchResult.failed("Amount under a penny or balance limit reached"));
+                            else {
+                                changes.add(new AccountChange(AccountChange.Op.DEPOSIT, session.getUsername(), session.getAccounts(), op.amount, acc));
+                                results.add(BatchResult.ok());
+                            }
+                        }
+                        case WITHDRAW -> {
+                            if (acc.requiresTwoSignatories()) results.add(BatchResult.failed("Joint account requires second signatory"));
+                            else if (!acc.withdraw(op.amount)) results.add(BatchResult.failed("Insufficient funds"));
+                            else {
+                                changes.add(new AccountChange(AccountChange.Op.WITHDRAW, session.getUsername(), session.getAccounts(), op.amount, acc));
+                                results.add(BatchResult.ok());
+                            }
+                        }
+                        case TRANSFER -> {
+                            Account to = session.getAccount(op.targetAccountNumber);
+                            if (to == null || to.equals(acc)) results.add(BatchResult.failed("Invalid target account " + op.targetAccountNumber));
+                            else if (acc.requiresTwoSignatories() || to.requiresTwoSignatories()) results.add(BatchResult.failed("Joint account requires second signatory"));
+                            else if (!acc.transfer(to, op.amount)) results.add(BatchResult.failed("Insufficient funds or target balance limit reached"));
+                            else {
+                                changes.add(new AccountChange(AccountChange.Op.TRANSFER, session.getUsername(), session.getAccounts(), op.amount, acc, to));
+                                results.add(BatchResult.ok());
+                            }
+                        }
+                    }
+                }
+
+                if (!changes.isEmpty()) {
+                    try {
+                        store.saveAll(changes);
+                    } catch (IOException e) {
+                        SAVE_FAILURES.increment();
+                        e.printStackTrace();
+                        // memory goes back to what the store holds
+                        before.forEach(Account::setBalanceMinor);
+                        for (int i = 0; i < results.size(); i++) {
+                            if (results.get(i).isOk()) results.set(i, BatchResult.failed("Not saved: " + e.getMessage()));
+                        }
+                        return results;
+                    } finally {
+                        storeWrites.incrementAndGet();
+                    }
+                    recordHistory(changes);
+                }
+            } finally {
+                guard.unlock();
+            }
+            return results;
+        } finally {
+            BATCH_TIME.recordSince(start);
         }
-        return false;
     }
 }
@@ -1,16 +1,48 @@
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import javax.swing.*;
 
 public class BankingGUI {
-    private final Banking bankingApp;   // backend logic
+    private final AsyncBanking bankingApp;   // backend logic, called off the EDT
+    private Session session;
     private JFrame frame;
     private JTextArea outputArea;
+    private AccountTableModel accountModel;
+    private JProgressBar progressBar;
+    private int inFlight;   // calls still running; only touched on the EDT
 
     public BankingGUI(Banking app) {
-        this.bankingApp = app;
+        this.bankingApp = new AsyncBanking(app);
         showLoginScreen();
     }
 
+    private JProgressBar newProgressBar() {
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(inFlight > 0);
+        return progressBar;
+    }
+
+    // Wait for a Banking call without blocking the EDT: the progress bar shows while
+    // any call is running and the result is handed to onResult back on the EDT
+    private <T> void runAsync(CompletableFuture<T> call, Consumer<T> onResult) {
+        inFlight++;
+        progressBar.setVisible(true);
+        call.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (--inFlight == 0) progressBar.setVisible(false);
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(frame, "Request failed: " + cause.getMessage());
+            } else {
+                onResult.accept(result);
+            }
+        }));
+    }
+
     // ----------------- LOGIN SCREEN -----------------
     private void showLoginScreen() {
         frame = new JFrame("Banking App - Login");
@@ -59,17 +91,27 @@ public class BankingGUI {
         gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 2;
         panel.add(status, gbc);
 
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 2;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel.add(newProgressBar(), gbc);
+
         // ---- Login action
         loginBtn.addActionListener(e -> {
             String username = userField.getText().trim();
             String password = new String(passField.getPassword()).trim();
 
-            if (bankingApp.login(username, password)) {
-                frame.dispose();
-                showMainMenu();
-            } else {
-                status.setText("Invalid username or password.");
-            }
+            loginBtn.setEnabled(false);
+            status.setText(" ");
+            runAsync(bankingApp.openSession(username, password), opened -> {
+                loginBtn.setEnabled(true);
+                if (opened != null) {
+                    session = opened;
+                    frame.dispose();
+                    showMainMenu();
+                } else {
+                    status.setText("Invalid username or password.");
+                }
+            });
         });
 
         // ---- Register action
@@ -79,8 +121,8 @@ public class BankingGUI {
             String password = JOptionPane.showInputDialog(frame, "Enter new password:");
             if (password == null || password.isBlank()) return;
 
-            String result = bankingApp.registerUser(username.trim(), password.trim());
-            JOptionPane.showMessageDialog(frame, result);
+            runAsync(bankingApp.registerUser(username.trim(), password.trim()),
+                    result -> JOptionPane.showMessageDialog(frame, result));
         });
 
         frame.add(panel);
@@ -101,14 +143,27 @@ public class BankingGUI {
         outputArea.setEditable(false);
         outputArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
 
+        // accounts are fetched a page at a time as the table scrolls
+        accountModel = new AccountTableModel((sort, descending, offset, limit) ->
+                bankingApp.getAccountsPage(session, sort, descending, offset, limit));
+        JTable accountTable = new JTable(accountModel);
+        accountTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                accountModel.sortBy(accountTable.columnAtPoint(e.getPoint()));
+            }
+        });
+        accountModel.refresh();
+
         JButton createAccBtn = new JButton("Create Account");
         JButton listAccBtn = new JButton("List Accounts");
         JButton depositBtn = new JButton("Deposit");
         JButton withdrawBtn = new JButton("Withdraw");
         JButton transferBtn = new JButton("Transfer");
         JButton logoutBtn = new JButton("Logout");
+        JButton allAccBtn = new JButton("All Accounts");
 
-        JButton[] buttons = {createAccBtn, listAccBtn, depositBtn, withdrawBtn, transferBtn, logoutBtn};
+        JButton[] buttons = {createAccBtn, listAccBtn, depositBtn, withdrawBtn, transferBtn, logoutBtn, allAccBtn};
         for (JButton b : buttons) b.setFont(new Font("Arial", Font.PLAIN, 14));
 
         // ---- Actions
@@ -135,80 +190,138 @@ public class BankingGUI {
                             return; 
                         }
                     }
-                String result = bankingApp.createAccount(choice + 1, twoSignatories, secondSignatory); 
-                outputArea.append(result + "\n");
+                runAsync(bankingApp.createAccount(session, choice + 1, twoSignatories, secondSignatory),
+                        result -> {
+                            outputArea.append(result + "\n");
+                            accountModel.refresh();
+                        });
             } });
 
-        listAccBtn.addActionListener(e -> {
-            String accountsList = bankingApp.getAccountsList();
-            outputArea.append(accountsList + "\n");
-        });
+        listAccBtn.addActionListener(e -> accountModel.refresh());
+
+        allAccBtn.addActionListener(e -> showAllAccounts());
 
         depositBtn.addActionListener(e -> {
             String accNo = JOptionPane.showInputDialog(frame, "Enter account number:");
 
             String amtStr = JOptionPane.showInputDialog(frame, "Enter deposit amount:");
+            double amount;
             try {
-                double amount = Double.parseDouble(amtStr);
-                boolean ok = bankingApp.deposit(accNo, amount);
-                outputArea.append(ok ? "Deposited £" + amount + " into " + accNo + "\n"
-                        : "Deposit failed. Check account.\n");
+                amount = Double.parseDouble(amtStr);
             } catch (Exception ex) {
                 outputArea.append("Invalid input for deposit.\n");
+                return;
             }
+            runAsync(bankingApp.deposit(session, accNo, amount), ok ->
+                    logAndRefresh(ok ? "Deposited £" + amount + " into " + accNo + "\n"
+                            : "Deposit failed. Check account and amount.\n"));
         });
 
         withdrawBtn.addActionListener(e -> {
             String accNo = JOptionPane.showInputDialog(frame, "Enter account number:");
             String amtStr = JOptionPane.showInputDialog(frame, "Enter withdrawal amount:");
+            double amount;
             try {
-                double amount = Double.parseDouble(amtStr);
-                boolean ok = bankingApp.withdraw(accNo, amount);
-                outputArea.append(ok ? "Withdrew £" + amount + " from " + accNo + "\n"
-                        : "Withdrawal failed. Check balance/overdraft. May require permission\n");
+                amount = Double.parseDouble(amtStr);
             } catch (Exception ex) {
                 outputArea.append("Invalid input for withdrawal.\n");
+                return;
             }
+            runAsync(bankingApp.withdraw(session, accNo, amount), ok ->
+                    logAndRefresh(ok ? "Withdrew £" + amount + " from " + accNo + "\n"
+                            : "Withdrawal failed. Check balance/overdraft. May require permission\n"));
         });
 
         transferBtn.addActionListener(e -> {
             String fromAcc = JOptionPane.showInputDialog(frame, "Enter FROM account number:");
             String toAcc = JOptionPane.showInputDialog(frame, "Enter TO account number:");
             String amtStr = JOptionPane.showInputDialog(frame, "Enter transfer amount:");
+            double amount;
             try {
-                double amount = Double.parseDouble(amtStr);
-                boolean ok = bankingApp.transfer(fromAcc, toAcc, amount);
-                outputArea.append(ok ? "Transferred £" + amount + " from " + fromAcc + " to " + toAcc + "\n"
-                        : "Transfer failed. Check accounts/balance.\n");
+                amount = Double.parseDouble(amtStr);
             } catch (Exception ex) {
                 outputArea.append("Invalid input for transfer.\n");
+                return;
             }
+            runAsync(bankingApp.transfer(session, fromAcc, toAcc, amount), ok ->
+                    logAndRefresh(ok ? "Transferred £" + amount + " from " + fromAcc + " to " + toAcc + "\n"
+                            : "Transfer failed. Check accounts/balance.\n"));
         });
 
         logoutBtn.addActionListener(e -> {
-            bankingApp.logout();
+            bankingApp.closeSession(session);   // nothing to wait for
+            session = null;
             frame.dispose();
             showLoginScreen();
         });
 
-        JPanel buttonPanel = new JPanel(new GridLayout(2, 3, 10, 10));
+        JPanel buttonPanel = new JPanel(new GridLayout(0, 3, 10, 10));
         buttonPanel.add(createAccBtn);
         buttonPanel.add(listAccBtn);
         buttonPanel.add(depositBtn);
         buttonPanel.add(withdrawBtn);
         buttonPanel.add(transferBtn);
         buttonPanel.add(logoutBtn);
+        if (bankingApp.getBanking().isAdmin(session)) buttonPanel.add(allAccBtn);
 
-        panel.add(new JScrollPane(outputArea), BorderLayout.CENTER);
+        panel.add(newProgressBar(), BorderLayout.NORTH);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(accountTable), new JScrollPane(outputArea));
+        split.setResizeWeight(0.6);
+        panel.add(split, BorderLayout.CENTER);
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         frame.add(panel);
         frame.setVisible(true);
     }
 
+    // ----------------- ALL ACCOUNTS (admin) -----------------
+    // every account in the store, paged and sorted like the user's own table
+    private void showAllAccounts() {
+        JFrame allFrame = new JFrame("Banking App - All Accounts");
+        allFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        allFrame.setSize(750, 500);
+        allFrame.setLocationRelativeTo(frame);
+
+        AccountTableModel allModel = new AccountTableModel((sort, descending, offset, limit) ->
+                bankingApp.getAllAccountsPage(session, sort, descending, offset, limit), true);
+        JTable allTable = new JTable(allModel);
+        allTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                allModel.sortBy(allTable.columnAtPoint(e.getPoint()));
+            }
+        });
+        allModel.refresh();
+
+        JButton refreshBtn = new JButton("Refresh");
+        refreshBtn.setFont(new Font("Arial", Font.PLAIN, 14));
+        refreshBtn.addActionListener(e -> allModel.refresh());
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(new JScrollPane(allTable), BorderLayout.CENTER);
+        panel.add(refreshBtn, BorderLayout.SOUTH);
+        allFrame.add(panel);
+        allFrame.setVisible(true);
+    }
+
+    private void logAndRefresh(String message) {
+        outputArea.append(message);
+        accountModel.refresh();
+    }
+
     // ----------------- MAIN -----------------
+    @SuppressWarnings("CallToPrintStackTrace")
     public static void main(String[] args) {
         Banking app = new Banking();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                app.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "banking-shutdown"));
         SwingUtilities.invokeLater(() -> new BankingGUI(app));
     }
 }
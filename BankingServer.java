@@ -0,0 +1,299 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Headless HTTP/JSON front end to one shared Banking engine. Each request runs on
+// its own virtual thread where available (see AsyncBanking.newExecutor).
+//
+//   POST /register  {"username": "...", "password": "..."}
+//   POST /login     {"username": "...", "password": "..."}   -> {"token": "..."}
+//   POST /logout
+//   GET  /accounts?sort=ACCOUNT_NUMBER|TYPE|BALANCE&desc=true&offset=0&limit=50
+//   POST /accounts  {"type": 1-3, "secondSignatory": "..."}
+//   POST /deposit   {"account": "ACC1001", "amount": 10.5}
+//   POST /withdraw  {"account": "ACC1001", "amount": 10.5}
+//   POST /transfer  {"from": "ACC1001", "to": "ACC1002", "amount": 10.5}
+//   GET  /statement?account=ACC1001&from=<epoch ms>&to=<epoch ms>&offset=0&limit=50   (newest first)
+//
+// All but /register and /login need "Authorization: Bearer <token>". A token unused
+// for -Dbanking.sessionIdleSeconds (default 900) is logged out; a sweep closes
+// abandoned ones so their accounts are released.
+//
+// Amounts must be positive, finite and at most AccountTable.MAX_AMOUNT.
+public class BankingServer {
+    private static final int MAX_BODY = 64 * 1024;
+
+    private final Banking banking;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long sessionIdleMillis;
+    private final ScheduledExecutorService sweeper;
+
+    public BankingServer(Banking banking, int port) throws IOException {
+        this(banking, port, Long.getLong("banking.sessionIdleSeconds", 900) * 1000);
+    }
+
+    public BankingServer(Banking banking, int port, long sessionIdleMillis) throws IOException {
+        this.banking = banking;
+        this.sessionIdleMillis = sessionIdleMillis;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = AsyncBanking.newExecutor("banking-http");
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(60_000, sessionIdleMillis / 4));
+        sweeper.scheduleWithFixedDelay(() -> banking.closeIdleSessions(sessionIdleMillis),
+                                       period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void start() { server.start(); }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        sweeper.shutdown();
+        try {
+            banking.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // thrown by handlers to answer with an error status
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            body = route(exchange);
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("Internal error");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        switch (path) {
+            case "/register" -> {
+                requireMethod(method, "POST");
+                Map<String, Object> req = readBody(exchange);
+                String message = banking.registerUser(text(req, "username"), text(req, "password"));
+                return result(message.startsWith("User registered"), message);
+            }
+            case "/login" -> {
+                requireMethod(method, "POST");
+                Map<String, Object> req = readBody(exchange);
+                Session session = banking.openSession(text(req, "username"), text(req, "password"));
+                if (session == null) throw new HttpError(401, "Invalid username or password.");
+                return "{\"token\":" + Json.quote(session.getToken()) + "}";
+            }
+            case "/logout" -> {
+                requireMethod(method, "POST");
+                banking.closeSession(session(exchange));
+                return result(true, "Logged out.");
+            }
+            case "/accounts" -> {
+                Session session = session(exchange);
+                if (method.equals("GET")) return listAccounts(session, query(exchange));
+                requireMethod(method, "POST");
+                Map<String, Object> req = readBody(exchange);
+                String second = optionalText(req, "secondSignatory");
+                String message = banking.createAccount(session, (int) number(req, "type"), second != null, second);
+                return result(message.startsWith("Created"), message);
+            }
+            case "/deposit" -> {
+                requireMethod(method, "POST");
+                Session session = session(exchange);
+                Map<String, Object> req = readBody(exchange);
+                boolean ok = banking.deposit(session, text(req, "account"), amount(req));
+                return result(ok, ok ? "Deposited." : "Deposit failed. Check account and amount.");
+            }
+            case "/withdraw" -> {
+                requireMethod(method, "POST");
+                Session session = session(exchange);
+                Map<String, Object> req = readBody(exchange);
+                boolean ok = banking.withdraw(session, text(req, "account"), amount(req));
+                return result(ok, ok ? "Withdrawn." : "Withdrawal failed. Check balance/overdraft.");
+            }
+            case "/transfer" -> {
+                requireMethod(method, "POST");
+                Session session = session(exchange);
+                Map<String, Object> req = readBody(exchange);
+                boolean ok = banking.transfer(session, text(req, "from"), text(req, "to"), amount(req));
+                return result(ok, ok ? "Transferred." : "Transfer failed. Check accounts/balance.");
+            }
+            case "/statement" -> {
+                requireMethod(method, "GET");
+                return statement(session(exchange), query(exchange));
+            }
+            default -> throw new HttpError(404, "No such endpoint: " + path);
+        }
+    }
+
+    private String listAccounts(Session session, Map<String, String> query) {
+        AccountPage.Sort sort = AccountPage.Sort.valueOf(query.getOrDefault("sort", "ACCOUNT_NUMBER").toUpperCase());
+        boolean descending = Boolean.parseBoolean(query.get("desc"));
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Math.min(1000, Integer.parseInt(query.getOrDefault("limit", "100")));
+        AccountPage page = banking.getAccountsPage(session, sort, descending, offset, limit);
+        StringBuilder sb = new StringBuilder("{\"total\":").append(page.getTotal()).append(",\"accounts\":[");
+        List<AccountRow> rows = page.getRows();
+        for (int i = 0; i < rows.size(); i++) {
+            AccountRow r = rows.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"account\":").append(Json.quote(r.accountNumber))
+              .append(",\"type\":").append(Json.quote(r.type))
+              .append(",\"balance\":").append(r.balance)
+              .append(",\"twoSignatories\":").append(r.twoSignatories)
+              .append(",\"secondSignatory\":").append(Json.quote(r.secondSignatory))
+              .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private String statement(Session session, Map<String, String> query) {
+        String account = query.get("account");
+        if (account == null) throw new IllegalArgumentException("Missing account");
+        long from = Long.parseLong(query.getOrDefault("from", "0"));
+        long to = Long.parseLong(query.getOrDefault("to", String.valueOf(Long.MAX_VALUE)));
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Math.min(1000, Integer.parseInt(query.getOrDefault("limit", "50")));
+        TransactionHistory.Page page = banking.getStatement(session, account, from, to, offset, limit);
+        if (page == null) throw new HttpError(404, "No history for " + account);
+        StringBuilder sb = new StringBuilder("{\"total\":").append(page.total).append(",\"entries\":[");
+        for (int i = 0; i < page.entries.size(); i++) {
+            TransactionHistory.Entry e = page.entries.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"time\":").append(e.time)
+              .append(",\"op\":").append(Json.quote(e.op.name()))
+              .append(",\"amount\":").append(AccountTable.toMajor(e.amountMinor))
+              .append(",\"balance\":").append(AccountTable.toMajor(e.balanceMinor))
+              .append(",\"counterparty\":").append(Json.quote(e.counterparty))
+              .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private Session session(HttpExchange exchange) {
+        String auth = exchange.getRequestHeaders().getFirst("Authorization");
+        String token = auth != null && auth.startsWith("Bearer ") ? auth.substring(7).trim() : null;
+        Session session = banking.getSession(token, sessionIdleMillis);
+        if (session == null) throw new HttpError(401, "Not logged in.");
+        return session;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) throw new HttpError(405, "Use " + expected);
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) throw new HttpError(413, "Request body too large");
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            return text.isBlank() ? new HashMap<>() : Json.parseObject(text);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                       URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String text(Map<String, Object> req, String key) {
+        String value = optionalText(req, key);
+        if (value == null) throw new IllegalArgumentException("Missing \"" + key + "\"");
+        return value;
+    }
+
+    private static String optionalText(Map<String, Object> req, String key) {
+        Object value = req.get(key);
+        if (value == null) return null;
+        if (!(value instanceof String s)) throw new IllegalArgumentException("\"" + key + "\" must be a string");
+        return s.isBlank() ? null : s.trim();
+    }
+
+    private static double number(Map<String, Object> req, String key) {
+        if (!(req.get(key) instanceof Double d)) throw new IllegalArgumentException("\"" + key + "\" must be a number");
+        return d;
+    }
+
+    // Banking refuses these too; checked here so the client gets a 400 saying why
+    private static double amount(Map<String, Object> req) {
+        double amount = number(req, "amount");
+        if (!AccountTable.isValidAmount(amount)) {
+            throw new IllegalArgumentException(String.format("\"amount\" must be positive and at most %.2f", AccountTable.MAX_AMOUNT));
+        }
+        return amount;
+    }
+
+    private static String result(boolean ok, String message) {
+        return "{\"ok\":" + ok + ",\"message\":" + Json.quote(message) + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    // java BankingServer [port]   (default: -Dbanking.port, else 8080)
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("banking.port", 8080);
+        BankingServer server = new BankingServer(new Banking(), port);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "banking-shutdown"));
+        System.out.println("Banking server listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,33 @@
+// One entry of a Banking.executeBatch call
+public class BatchOperation {
+    public enum Type { DEPOSIT, WITHDRAW, TRANSFER }
+
+    final Type type;
+    final String accountNumber;
+    final String targetAccountNumber;   // TRANSFER only
+    final double amount;
+
+    private BatchOperation(Type type, String accountNumber, String targetAccountNumber, double amount) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.targetAccountNumber = targetAccountNumber;
+        this.amount = amount;
+    }
+
+    public static BatchOperation deposit(String accNo, double amount) {
+        return new BatchOperation(Type.DEPOSIT, accNo, null, amount);
+    }
+
+    public static BatchOperation withdraw(String accNo, double amount) {
+        return new BatchOperation(Type.WITHDRAW, accNo, null, amount);
+    }
+
+    public static BatchOperation transfer(String fromAcc, String toAcc, double amount) {
+        return new BatchOperation(Type.TRANSFER, fromAcc, toAcc, amount);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + accountNumber + (targetAccountNumber != null ? " -> " + targetAccountNumber : "") + " " + amount;
+    }
+}
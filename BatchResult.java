@@ -0,0 +1,19 @@
+// Outcome of one BatchOperation
+public class BatchResult {
+    private final boolean ok;
+    private final String message;
+
+    BatchResult(boolean ok, String message) {
+        this.ok = ok;
+        this.message = message;
+    }
+
+    static BatchResult ok() { return new BatchResult(true, "OK"); }
+    static BatchResult failed(String reason) { return new BatchResult(false, reason); }
+
+    public boolean isOk() { return ok; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() { return message; }
+}
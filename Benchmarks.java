@@ -0,0 +1,286 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Micro-benchmarks for the Banking and CSVDatabase hot paths, run against
+// generated datasets of each requested size. Every (benchmark, size) pair gets a
+// fresh copy of the dataset, warmup iterations, then timed iterations; each
+// iteration repeats the operation for a fixed time and reports throughput,
+// average time, and allocation (bytes/op from the thread's allocation counter)
+// plus GC count/time. Results are written as JSON in the shape JMH uses, so the
+// same tooling can diff runs.
+//
+//   java -Xmx8g Benchmarks [--sizes 1000,100000,10000000] [--include regex]
+//        [--warmup 3] [--iterations 5] [--seconds 1] [--out results.json]
+public class Benchmarks {
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    // builds the operation for one dataset; dir holds users.csv, accounts.csv and records.csv
+    interface Setup {
+        Op create(File dir, int size) throws Exception;
+    }
+
+    private static final Map<String, Setup> BENCHMARKS = new LinkedHashMap<>();
+    private static volatile Object sink;   // keeps results alive so the work isn't optimised away
+
+    static {
+        BENCHMARKS.put("banking.login", (dir, size) -> {
+            Banking banking = bank(dir);
+            Random random = new Random(1);
+            return () -> {
+                int user = random.nextInt(size);
+                boolean ok = banking.login(SyntheticData.username(user), SyntheticData.password(user));
+                banking.logout();
+                return ok;
+            };
+        });
+        BENCHMARKS.put("banking.deposit", (dir, size) -> {
+            Banking banking = bank(dir);
+            Session session = banking.openSession(SyntheticData.username(0), SyntheticData.password(0));
+            String acc = SyntheticData.accountNumber(0, 3, 0);
+            return () -> banking.deposit(session, acc, 1.0);
+        });
+        BENCHMARKS.put("banking.transfer", (dir, size) -> {
+            Banking banking = bank(dir);
+            Session session = banking.openSession(SyntheticData.username(0), SyntheticData.password(0));
+            String a = SyntheticData.accountNumber(0, 3, 0), b = SyntheticData.accountNumber(0, 3, 2);
+            boolean[] flip = new boolean[1];
+            return () -> (flip[0] = !flip[0]) ? banking.transfer(session, a, b, 1.0) : banking.transfer(session, b, a, 1.0);
+        });
+        // the store write behind every Banking change (Banking.saveAccounts)
+        BENCHMARKS.put("banking.saveAccounts", (dir, size) -> {
+            CsvAccountStore store = new CsvAccountStore(new File(dir, "accounts.csv").getPath());
+            Banking banking = new Banking(store, dir);
+            Session session = banking.openSession(SyntheticData.username(0), SyntheticData.password(0));
+            Account acc = session.getAccount(SyntheticData.accountNumber(0, 3, 0));
+            AccountChange change = new AccountChange(AccountChange.Op.DEPOSIT, session.getUsername(), session.getAccounts(), 0.0, acc);
+            return () -> {
+                store.save(change);
+                return change;
+            };
+        });
+        BENCHMARKS.put("csvdb.loadFromFile", (dir, size) -> {
+            String path = new File(dir, "records.csv").getPath();
+            return () -> new CSVDatabase(path);
+        });
+        BENCHMARKS.put("csvdb.loadFromFile.columnar", (dir, size) -> {
+            String path = new File(dir, "records.csv").getPath();
+            return () -> new CSVDatabase(path, true, RecordSchema.people());
+        });
+        BENCHMARKS.put("csvdb.loadFromFile.binary", (dir, size) -> {
+            String path = new File(dir, "records.csv").getPath(), binary = new File(dir, "records.tbl").getPath();
+            new CSVDatabase(path, false, RecordSchema.people()).saveBinary(binary, true);
+            return () -> new CSVDatabase(path, false, RecordSchema.people(), binary);
+        });
+        BENCHMARKS.put("csvdb.searchByField1", (dir, size) -> {
+            CSVDatabase db = new CSVDatabase(new File(dir, "records.csv").getPath());
+            Random random = new Random(1);
+            return () -> db.searchByField1("Name" + random.nextInt(size));
+        });
+        BENCHMARKS.put("csvdb.searchByField1.indexed", (dir, size) -> {
+            CSVDatabase db = new CSVDatabase(new File(dir, "records.csv").getPath());
+            db.createIndex(1, true);   // searchByField1 is case-insensitive
+            Random random = new Random(1);
+            return () -> db.searchByField1("Name" + random.nextInt(size));
+        });
+        BENCHMARKS.put("csvdb.saveToFile", (dir, size) -> {
+            CSVDatabase db = new CSVDatabase(new File(dir, "records.csv").getPath());
+            int[] next = {size};
+            return () -> {
+                db.addRecord(new Record("Name" + next[0]++, "30", "Job1", "City1", "UK"));
+                db.saveToFile();
+                return db;
+            };
+        });
+    }
+
+    private static Banking bank(File dir) {
+        return new Banking(new CsvAccountStore(new File(dir, "accounts.csv").getPath()), dir);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1000, 100_000};
+        Pattern include = Pattern.compile(".*");
+        int warmup = 3, iterations = 5;
+        double seconds = 1;
+        String out = "benchmark-results.json";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                case "--include" -> include = Pattern.compile(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Double.parseDouble(args[i + 1]);
+                case "--out" -> out = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<String> results = new ArrayList<>();
+        PrintStream console = System.out;
+        for (int size : sizes) {
+            File data = Files.createTempDirectory("bench-data-").toFile();
+            try {
+                console.println("# generating dataset, size " + size);
+                SyntheticData.writeUsers(new File(data, "users.csv"), size);
+                SyntheticData.writeAccounts(new File(data, "accounts.csv"), size, 3, 42);
+                SyntheticData.writeRecords(new File(data, "records.csv"), size, 42);
+                for (Map.Entry<String, Setup> e : BENCHMARKS.entrySet()) {
+                    if (!include.matcher(e.getKey()).find()) continue;
+                    File dir = Files.createTempDirectory("bench-run-").toFile();
+                    try {
+                        copyDirectory(data, dir);
+                        console.println("# " + e.getKey() + " size=" + size);
+                        Op op = e.getValue().create(dir, size);
+                        Result r = measure(op, warmup, iterations, (long) (seconds * 1e9), console);
+                        results.add(r.toJson(e.getKey(), size, true));
+                        results.add(r.toJson(e.getKey(), size, false));
+                        console.printf("  %.3f ops/s, %.3f us/op, %.0f B/op%n",
+                                       r.mean(r.throughput), r.mean(r.averageMicros), r.mean(r.bytesPerOp));
+                    } finally {
+                        deleteDirectory(dir);
+                    }
+                }
+            } finally {
+                deleteDirectory(data);
+            }
+        }
+        try (PrintWriter w = new PrintWriter(new FileWriter(out))) {
+            w.println("[");
+            w.println(String.join(",\n", results));
+            w.println("]");
+        }
+        console.println("# results written to " + out);
+    }
+
+    // one value per measured iteration
+    private static final class Result {
+        final List<Double> throughput = new ArrayList<>();     // ops/s
+        final List<Double> averageMicros = new ArrayList<>();  // us/op
+        final List<Double> bytesPerOp = new ArrayList<>();
+        final List<Double> allocRate = new ArrayList<>();      // MB/s
+        final List<Double> gcCount = new ArrayList<>();
+        final List<Double> gcMillis = new ArrayList<>();
+
+        double mean(List<Double> values) {
+            return values.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        }
+
+        // half-width of a 99.9% confidence interval, as JMH reports it
+        double error(List<Double> values) {
+            int n = values.size();
+            if (n < 2) return Double.NaN;
+            double mean = mean(values), sq = 0;
+            for (double v : values) sq += (v - mean) * (v - mean);
+            return studentT999(n - 1) * Math.sqrt(sq / (n - 1)) / Math.sqrt(n);
+        }
+
+        String toJson(String benchmark, int size, boolean throughputMode) {
+            List<Double> primary = throughputMode ? throughput : averageMicros;
+            return "{\"benchmark\":" + Json.quote(benchmark) +
+                   ",\"mode\":" + Json.quote(throughputMode ? "thrpt" : "avgt") +
+                   ",\"measurementIterations\":" + primary.size() +
+                   ",\"params\":{\"size\":" + Json.quote(String.valueOf(size)) + "}" +
+                   ",\"primaryMetric\":" + metric(primary, throughputMode ? "ops/s" : "us/op", true) +
+                   ",\"secondaryMetrics\":{" +
+                   "\"gc.alloc.rate\":" + metric(allocRate, "MB/sec", false) +
+                   ",\"gc.alloc.rate.norm\":" + metric(bytesPerOp, "B/op", false) +
+                   ",\"gc.count\":" + metric(gcCount, "counts", false) +
+                   ",\"gc.time\":" + metric(gcMillis, "ms", false) + "}}";
+        }
+
+        private String metric(List<Double> values, String unit, boolean raw) {
+            StringBuilder sb = new StringBuilder("{\"score\":").append(number(mean(values)))
+                .append(",\"scoreError\":").append(number(error(values)))
+                .append(",\"scoreUnit\":").append(Json.quote(unit));
+            if (raw) {
+                sb.append(",\"rawData\":[[");
+                for (int i = 0; i < values.size(); i++) sb.append(i > 0 ? "," : "").append(number(values.get(i)));
+                sb.append("]]");
+            }
+            return sb.append('}').toString();
+        }
+
+        private static String number(double v) {
+            return Double.isFinite(v) ? String.valueOf(v) : "\"NaN\"";
+        }
+    }
+
+    // two-sided 99.9% Student t quantiles for small samples; normal beyond
+    private static double studentT999(int df) {
+        double[] table = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                          4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+        return df <= table.length ? table[df - 1] : 3.291;
+    }
+
+    private static Result measure(Op op, int warmup, int iterations, long iterationNanos, PrintStream console) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Result result = new Result();
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < warmup + iterations; i++) {
+            long gcCount0 = gcCount(), gcMillis0 = gcMillis();
+            long allocated0 = threads.getThreadAllocatedBytes(thread);
+            long ops = 0;
+            System.setOut(quiet);   // Banking and CSVDatabase print progress
+            long start = System.nanoTime(), elapsed;
+            try {
+                do {
+                    sink = op.run();
+                    ops++;
+                } while ((elapsed = System.nanoTime() - start) < iterationNanos);
+            } finally {
+                System.setOut(console);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - allocated0;
+            if (i < warmup) continue;
+            double secs = elapsed / 1e9;
+            result.throughput.add(ops / secs);
+            result.averageMicros.add(elapsed / 1e3 / ops);
+            result.bytesPerOp.add((double) allocated / ops);
+            result.allocRate.add(allocated / secs / (1024 * 1024));
+            result.gcCount.add((double) (gcCount() - gcCount0));
+            result.gcMillis.add((double) (gcMillis() - gcMillis0));
+        }
+        return result;
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionTime());
+        return n;
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        File[] files = from.listFiles();
+        if (files == null) return;
+        for (File f : files) Files.copy(f.toPath(), new File(to, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void deleteDirectory(File dir) throws IOException {
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,411 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Read-optimised binary form of a CSVDatabase table.
+//
+// Layout: header | column chunks | metadata
+//   header (32 bytes): magic, version, row count, block count, metadata offset
+//   column chunk: one column of one block (up to BLOCK_ROWS rows), optionally
+//     compressed with BlockCompressor. INT and DICTIONARY columns are int32s,
+//     TEXT columns are strings. An INT chunk holding a null, or text that isn't
+//     how String.valueOf(int) writes it ("030"), is stored as strings instead.
+//   metadata: source tag (version 2+), column types, DICTIONARY values, then per
+//     block its row count and, per column, chunk offset/lengths, flags (1 =
+//     compressed, 2 = INT stored as strings) and min/max stats of non-null values
+// Strings are a varint and UTF-8: the varint is length + 1 with 0 for null from
+// version 3, the plain length before.
+//
+// The source tag is whatever the writer passed to identify what the table was made
+// from (CSVDatabase uses it to tell a current snapshot from a stale one); empty if
+// none, and for version 1 tables.
+//
+// Opening maps and reads the metadata only. Chunks are read when a row or scan
+// needs them, and scans skip blocks whose min/max rule out any match. A null field
+// never matches a scan range.
+//
+// A table is written beside its path and renamed over it once on disk, so a crash
+// mid-write leaves the previous table in place.
+public class BinaryTable implements Closeable {
+    private static final int MAGIC = 0x5254424C; // "RTBL"
+    private static final int VERSION = 3;
+    private static final int FLAG_COMPRESSED = 1, FLAG_TEXT = 2;
+    private static final int HEADER_SIZE = 32;
+    static final int BLOCK_ROWS = 8192;
+
+    private final FileChannel channel;
+    private final RecordSchema.ColumnType[] types = new RecordSchema.ColumnType[5];
+    private final String[][] dictionaries = new String[5][];
+    private final long rowCount;
+    private final Block[] blocks;
+    private final String source;
+    private final boolean nullStrings;   // version 3+
+    private int blocksRead;   // by the most recent scan
+
+    // last decoded block for get(); scans decode their own
+    private int cachedBlock = -1;
+    private Object[] cachedColumns;
+
+    private static final class Block {
+        long firstRow;
+        int rows;
+        final long[] offsets = new long[5];
+        final int[] storedLengths = new int[5];
+        final int[] rawLengths = new int[5];
+        final byte[] flags = new byte[5];
+        final long[] minInt = new long[5], maxInt = new long[5];
+        final String[] minText = new String[5], maxText = new String[5];
+    }
+
+    private BinaryTable(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        int version = header.getInt(0) == MAGIC ? header.getInt(4) : -1;
+        if (version < 1 || version > VERSION) throw new IOException("Not a binary table");
+        nullStrings = version >= 3;
+        header.position(8);
+        rowCount = header.getLong();
+        int blockCount = header.getInt();
+        long metaOffset = header.getLong();
+
+        MappedByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, metaOffset, channel.size() - metaOffset);
+        source = version == 1 ? "" : readString(meta, nullStrings);
+        RecordSchema.ColumnType[] all = RecordSchema.ColumnType.values();
+        for (int c = 0; c < 5; c++) types[c] = all[meta.get()];
+        for (int c = 0; c < 5; c++) {
+            if (types[c] != RecordSchema.ColumnType.DICTIONARY) continue;
+            dictionaries[c] = new String[meta.getInt()];
+            for (int i = 0; i < dictionaries[c].length; i++) dictionaries[c][i] = readString(meta, nullStrings);
+        }
+        blocks = new Block[blockCount];
+        long firstRow = 0;
+        for (int b = 0; b < blockCount; b++) {
+            Block block = new Block();
+            block.firstRow = firstRow;
+            block.rows = meta.getInt();
+            firstRow += block.rows;
+            for (int c = 0; c < 5; c++) {
+                block.offsets[c] = meta.getLong();
+                block.storedLengths[c] = meta.getInt();
+                block.rawLengths[c] = meta.getInt();
+                block.flags[c] = meta.get();
+                if (types[c] == RecordSchema.ColumnType.INT) {
+                    block.minInt[c] = meta.getInt();
+                    block.maxInt[c] = meta.getInt();
+                } else {
+                    block.minText[c] = readString(meta, nullStrings);
+                    block.maxText[c] = readString(meta, nullStrings);
+                }
+            }
+            blocks[b] = block;
+        }
+    }
+
+    public static BinaryTable open(String path) throws IOException {
+        return new BinaryTable(FileChannel.open(new File(path).toPath(), StandardOpenOption.READ));
+    }
+
+    public long rowCount() { return rowCount; }
+    public String source() { return source; }
+    public int blockCount() { return blocks.length; }
+    int lastScanBlocksRead() { return blocksRead; }
+
+    public synchronized Record get(long row) throws IOException {
+        if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("row " + row);
+        int b = (int) (row / BLOCK_ROWS);
+        if (b != cachedBlock) {
+            cachedColumns = decodeBlock(blocks[b]);
+            cachedBlock = b;
+        }
+        return record(cachedColumns, (int) (row - blocks[b].firstRow));
+    }
+
+    // every row, block by block
+    public Stream<Record> scan() {
+        return scanBlocks(b -> true);
+    }
+
+    // rows whose field lies in [from, to] (null = open); INT columns compare as
+    // numbers, the others as case-sensitive strings. Blocks whose stats exclude
+    // the range are never read.
+    public Stream<Record> scanRange(int field, String from, String to) {
+        int c = field - 1;
+        if (types[c] == RecordSchema.ColumnType.INT) {
+            long lo = from == null ? Long.MIN_VALUE : Long.parseLong(from.trim());
+            long hi = to == null ? Long.MAX_VALUE : Long.parseLong(to.trim());
+            return scanBlocks(b -> b.maxInt[c] >= lo && b.minInt[c] <= hi)
+                .filter(r -> {
+                    String v = r.get(field);
+                    if (v == null) return false;
+                    long n = Long.parseLong(v.trim());
+                    return n >= lo && n <= hi;
+                });
+        }
+        // a block with no non-null values has null stats
+        return scanBlocks(b -> b.maxText[c] != null &&
+                               (from == null || b.maxText[c].compareTo(from) >= 0) &&
+                               (to == null || b.minText[c].compareTo(to) <= 0))
+            .filter(r -> {
+                String v = r.get(field);
+                return v != null && (from == null || v.compareTo(from) >= 0) && (to == null || v.compareTo(to) <= 0);
+            });
+    }
+
+    public Stream<Record> scanEquals(int field, String value) {
+        return scanRange(field, value, value);
+    }
+
+    private Stream<Record> scanBlocks(Predicate<Block> mayMatch) {
+        blocksRead = 0;
+        return Arrays.stream(blocks).filter(mayMatch).flatMap(b -> {
+            Object[] columns;
+            try {
+                columns = decodeBlock(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            blocksRead++;
+            return IntStream.range(0, b.rows).mapToObj(i -> record(columns, i));
+        });
+    }
+
+    private Record record(Object[] columns, int i) {
+        String[] v = new String[5];
+        for (int c = 0; c < 5; c++) {
+            v[c] = switch (types[c]) {
+                case TEXT -> ((String[]) columns[c])[i];
+                case INT -> columns[c] instanceof String[] text ? text[i] : String.valueOf(((int[]) columns[c])[i]);
+                case DICTIONARY -> dictionaries[c][((int[]) columns[c])[i]];
+            };
+        }
+        return new Record(v[0], v[1], v[2], v[3], v[4]);
+    }
+
+    private Object[] decodeBlock(Block b) throws IOException {
+        Object[] columns = new Object[5];
+        for (int c = 0; c < 5; c++) {
+            byte[] stored = new byte[b.storedLengths[c]];
+            ByteBuffer target = ByteBuffer.wrap(stored);
+            while (target.hasRemaining()) {
+                if (channel.read(target, b.offsets[c] + target.position()) < 0) throw new EOFException();
+            }
+            byte[] raw = stored;
+            if ((b.flags[c] & FLAG_COMPRESSED) != 0) {
+                raw = new byte[b.rawLengths[c]];
+                BlockCompressor.decompress(stored, 0, stored.length, raw);
+            }
+            ByteBuffer in = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+            if (types[c] == RecordSchema.ColumnType.TEXT || (b.flags[c] & FLAG_TEXT) != 0) {
+                String[] values = new String[b.rows];
+                for (int i = 0; i < b.rows; i++) values[i] = readString(in, nullStrings);
+                columns[c] = values;
+            } else {
+                int[] values = new int[b.rows];
+                in.asIntBuffer().get(values);
+                columns[c] = values;
+            }
+        }
+        return columns;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---- writing
+
+    // Writes rows in BLOCK_ROWS blocks. A null schema stores every field as TEXT.
+    // Rows that don't fit an INT column throw NumberFormatException.
+    public static void write(String path, RecordSchema schema, Iterable<Record> rows, boolean compress) throws IOException {
+        write(path, schema, rows, compress, "");
+    }
+
+    public static void write(String path, RecordSchema schema, Iterable<Record> rows, boolean compress,
+                             String source) throws IOException {
+        RecordSchema.ColumnType[] types = new RecordSchema.ColumnType[5];
+        for (int c = 0; c < 5; c++) types[c] = schema == null ? RecordSchema.ColumnType.TEXT : schema.type(c);
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        for (int c = 0; c < 5; c++) dictionaries.add(new LinkedHashMap<>());
+
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        DataOutputStream metaOut = new DataOutputStream(meta);
+        long rowCount = 0;
+        int blockCount = 0;
+        File target = new File(path);
+        File tmp = new File(path + ".tmp");
+        boolean written = false;
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+            file.setLength(0);
+            file.write(new byte[HEADER_SIZE]);
+            List<Record> block = new ArrayList<>(BLOCK_ROWS);
+            Iterator<Record> it = rows.iterator();
+            while (it.hasNext()) {
+                block.add(it.next());
+                if (block.size() == BLOCK_ROWS || !it.hasNext()) {
+                    writeBlock(file, block, types, dictionaries, compress, metaOut);
+                    rowCount += block.size();
+                    blockCount++;
+                    block.clear();
+                }
+            }
+
+            long metaOffset = file.getFilePointer();
+            DataOutputStream tail = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getFD())));
+            writeString(tail, source);
+            for (int c = 0; c < 5; c++) tail.writeByte(types[c].ordinal());
+            for (int c = 0; c < 5; c++) {
+                if (types[c] != RecordSchema.ColumnType.DICTIONARY) continue;
+                tail.writeInt(dictionaries.get(c).size());
+                for (String v : dictionaries.get(c).keySet()) writeString(tail, v);
+            }
+            metaOut.flush();
+            meta.writeTo(tail);
+            tail.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(rowCount).putInt(blockCount).putLong(metaOffset);
+            file.seek(0);
+            file.write(header.array());
+            file.getFD().sync();
+            written = true;
+        } finally {
+            if (!written) Files.deleteIfExists(tmp.toPath());
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeBlock(RandomAccessFile file, List<Record> block, RecordSchema.ColumnType[] types,
+                                   List<Map<String, Integer>> dictionaries, boolean compress,
+                                   DataOutputStream meta) throws IOException {
+        meta.writeInt(block.size());
+        for (int c = 0; c < 5; c++) {
+            int field = c + 1;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream text = new DataOutputStream(bytes);
+            String minText = null, maxText = null;
+            int minInt = Integer.MAX_VALUE, maxInt = Integer.MIN_VALUE;
+            int flags = 0;
+            if (types[c] == RecordSchema.ColumnType.INT) {
+                for (Record r : block) {
+                    String v = r.get(field);
+                    if (v == null || !v.equals(String.valueOf(Integer.parseInt(v.trim())))) flags |= FLAG_TEXT;
+                }
+            }
+            ByteBuffer ints = types[c] == RecordSchema.ColumnType.TEXT || flags != 0 ? null
+                : ByteBuffer.allocate(4 * block.size()).order(ByteOrder.LITTLE_ENDIAN);
+            for (Record r : block) {
+                String v = r.get(field);
+                switch (types[c]) {
+                    case INT -> {
+                        if (ints == null) writeString(text, v);
+                        if (v == null) continue;
+                        int n = Integer.parseInt(v.trim());
+                        if (ints != null) ints.putInt(n);
+                        minInt = Math.min(minInt, n);
+                        maxInt = Math.max(maxInt, n);
+                    }
+                    case DICTIONARY -> {
+                        Map<String, Integer> dict = dictionaries.get(c);
+                        Integer code = dict.get(v);
+                        if (code == null) dict.put(v, code = dict.size());
+                        ints.putInt(code);
+                    }
+                    case TEXT -> writeString(text, v);
+                }
+                if (types[c] != RecordSchema.ColumnType.INT && v != null) {
+                    if (minText == null || v.compareTo(minText) < 0) minText = v;
+                    if (maxText == null || v.compareTo(maxText) > 0) maxText = v;
+                }
+            }
+            text.flush();
+            byte[] raw = ints != null ? ints.array() : bytes.toByteArray();
+            byte[] stored = raw;
+            int storedLength = raw.length;
+            if (compress) {
+                byte[] packed = new byte[BlockCompressor.maxCompressedLength(raw.length)];
+                int n = BlockCompressor.compress(raw, raw.length, packed);
+                if (n < raw.length) {
+                    stored = packed;
+                    storedLength = n;
+                    flags |= FLAG_COMPRESSED;
+                }
+            }
+            meta.writeLong(file.getFilePointer());
+            meta.writeInt(storedLength);
+            meta.writeInt(raw.length);
+            meta.writeByte(flags);
+            if (types[c] == RecordSchema.ColumnType.INT) {
+                meta.writeInt(minInt);
+                meta.writeInt(maxInt);
+            } else {
+                writeString(meta, minText);
+                writeString(meta, maxText);
+            }
+            file.write(stored, 0, storedLength);
+        }
+    }
+
+    // varint length + 1 (0 for null), then UTF-8
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        int n = s == null ? 0 : b.length + 1;
+        while ((n & ~0x7F) != 0) {
+            out.writeByte((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+        out.write(b);
+    }
+
+    // nullable: version 3+, where the varint is length + 1
+    private static String readString(ByteBuffer in, boolean nullable) {
+        int n = 0, shift = 0, b;
+        do {
+            b = in.get() & 0xFF;
+            n |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (nullable && n-- == 0) return null;
+        byte[] bytes = new byte[n];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // java BinaryTable import <csv> <table> [people]   (people: RecordSchema.people())
+    // java BinaryTable export <table> <csv>
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("import")) {
+            RecordSchema schema = args.length > 3 && args[3].equals("people") ? RecordSchema.people() : null;
+            CSVDatabase db = new CSVDatabase(args[1], true, schema);
+            db.saveBinary(args[2], true);
+            System.out.println("Imported " + db.size() + " records");
+        } else if (args.length == 3 && args[0].equals("export")) {
+            try (BinaryTable table = open(args[1]);
+                 BufferedWriter writer = new BufferedWriter(new FileWriter(args[2]))) {
+                for (Iterator<Record> it = table.scan().iterator(); it.hasNext(); ) {
+                    Record r = it.next();
+                    writer.write(String.join(",", CsvTokenizer.quote(r.field1), CsvTokenizer.quote(r.field2),
+                                             CsvTokenizer.quote(r.field3), CsvTokenizer.quote(r.field4),
+                                             CsvTokenizer.quote(r.field5)));
+                    writer.newLine();
+                }
+                System.out.println("Exported " + table.rowCount() + " records");
+            }
+        } else {
+            System.out.println("usage: BinaryTable import <csv> <table> [people] | export <table> <csv>");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+// Small LZ77 compressor in the style of the LZ4 block format, used for binary
+// table column chunks. Each sequence is a token (literal length in the high
+// nibble, match length - 4 in the low nibble; 15 means "more bytes follow, 255
+// at a time"), the literals, then a 2-byte little-endian match offset. The last
+// sequence carries literals only.
+final class BlockCompressor {
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 65535;
+
+    private BlockCompressor() {}
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    // returns the number of bytes written to dst, which must hold maxCompressedLength(length)
+    static int compress(byte[] src, int length, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int out = 0, anchor = 0, i = 0;
+        while (i + MIN_MATCH < length) {
+            int seq = readInt(src, i);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref >= 0 && i - ref <= MAX_OFFSET && readInt(src, ref) == seq) {
+                int matchLength = MIN_MATCH;
+                while (i + matchLength < length && src[ref + matchLength] == src[i + matchLength]) matchLength++;
+                out = writeSequence(src, anchor, i - anchor, dst, out, matchLength - MIN_MATCH);
+                dst[out++] = (byte) (i - ref);
+                dst[out++] = (byte) ((i - ref) >>> 8);
+                out = writeLength(dst, out, matchLength - MIN_MATCH);
+                i += matchLength;
+                anchor = i;
+            } else {
+                i++;
+            }
+        }
+        return writeSequence(src, anchor, length - anchor, dst, out, 0);
+    }
+
+    // returns the number of bytes written to dst
+    static int decompress(byte[] src, int offset, int length, byte[] dst) {
+        int in = offset, end = offset + length, out = 0;
+        while (in < end) {
+            int token = src[in++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do { b = src[in++] & 0xFF; literals += b; } while (b == 255);
+            }
+            System.arraycopy(src, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in >= end) break;   // final, literals-only sequence
+
+            int distance = (src[in++] & 0xFF) | (src[in++] & 0xFF) << 8;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do { b = src[in++] & 0xFF; matchLength += b; } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            // byte by byte: matches may overlap the bytes they produce
+            for (int k = 0; k < matchLength; k++, out++) dst[out] = dst[out - distance];
+        }
+        return out;
+    }
+
+    private static int writeSequence(byte[] src, int from, int literals, byte[] dst, int out, int matchExtra) {
+        dst[out++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchExtra, 15));
+        if (literals >= 15) out = writeExtra(dst, out, literals - 15);
+        System.arraycopy(src, from, dst, out, literals);
+        return out + literals;
+    }
+
+    // the low nibble's overflow goes after the offset, so it is written separately
+    private static int writeLength(byte[] dst, int out, int matchExtra) {
+        return matchExtra >= 15 ? writeExtra(dst, out, matchExtra - 15) : out;
+    }
+
+    private static int writeExtra(byte[] dst, int out, int remaining) {
+        while (remaining >= 255) {
+            dst[out++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[out++] = (byte) remaining;
+        return out;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
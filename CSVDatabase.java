@@ -1,48 +1,580 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class CSVDatabase {
     private List<Record> records = new ArrayList<>();
+    private List<String> loadErrors = new ArrayList<>();
+    private List<RecordIndex> indexes = new ArrayList<>();
     private String filePath;
+    private boolean parallelLoad;
+    private RecordSchema schema;   // null: one Record object per row
+    private String binaryPath;     // BinaryTable snapshot to load from when current; null for none
+
+    // Incremental saves: records[0, savedCount) are already in the file, anything
+    // after was added since. Edits and deletes of saved rows are queued in
+    // pendingChanges and appended to <file>.changes on save, which is replayed on
+    // load, until changes on disk pass rewriteThreshold and the file is rewritten.
+    //
+    // The log opens with G,<length>,<crc>: the size and CRC32 of the file it was
+    // started against. The file only grows until the next rewrite, so on load a log
+    // whose prefix no longer matches was already folded in (the rewrite died before
+    // deleting it) and is dropped instead of being applied twice.
+    private int savedCount;
+    private List<String> pendingChanges = new ArrayList<>();
+    private int changesOnDisk;
+    private int rewriteThreshold = 1000;
+    private long baseLength = -1, baseCrc;   // the file as written by the last rewrite; -1 unknown
+
+    private static final LatencyHistogram LOAD_TIME = Metrics.timer("csvdb.load");
+    private static final LatencyHistogram SAVE_TIME = Metrics.timer("csvdb.save");
+    private static final LatencyHistogram REWRITE_TIME = Metrics.timer("csvdb.rewrite");
+    private static final LatencyHistogram SAVE_BINARY_TIME = Metrics.timer("csvdb.saveBinary");
+    private static final LatencyHistogram ADD_TIME = Metrics.timer("csvdb.add");
+    private static final LatencyHistogram UPDATE_TIME = Metrics.timer("csvdb.update");
+    private static final LatencyHistogram DELETE_TIME = Metrics.timer("csvdb.delete");
+    private static final LatencyHistogram INDEX_TIME = Metrics.timer("csvdb.createIndex");
+    private static final LatencyHistogram LOOKUP_TIME = Metrics.timer("csvdb.lookup");
+    private static final LatencyHistogram RANGE_TIME = Metrics.timer("csvdb.range");
+    private static final LatencyHistogram PREFIX_TIME = Metrics.timer("csvdb.prefix");
+    static final LongAdder ROWS_READ = Metrics.counter("csvdb.rowsRead");
+    static final LongAdder BYTES_READ = Metrics.counter("csvdb.bytesRead");
+    static final LongAdder ROWS_WRITTEN = Metrics.counter("csvdb.rowsWritten");
+    static final LongAdder BYTES_WRITTEN = Metrics.counter("csvdb.bytesWritten");
+
+    // files smaller than this aren't worth splitting
+    private static final long PARALLEL_LOAD_THRESHOLD = 8L << 20;
 
     public CSVDatabase(String filePath) throws IOException {
+        this(filePath, false);
+    }
+
+    // parallelLoad: parse large files in line-aligned chunks on the common fork-join pool
+    public CSVDatabase(String filePath, boolean parallelLoad) throws IOException {
+        this(filePath, parallelLoad, null);
+    }
+
+    // schema: hold records in typed, dictionary-encoded columns; Records are built on read
+    public CSVDatabase(String filePath, boolean parallelLoad, RecordSchema schema) throws IOException {
+        this(filePath, parallelLoad, schema, null);
+    }
+
+    // binaryPath: a table written by saveBinary. Loads read it instead of parsing the CSV
+    // while it is a snapshot of the file and .changes log as they are on disk now
+    public CSVDatabase(String filePath, boolean parallelLoad, RecordSchema schema, String binaryPath) throws IOException {
         this.filePath = filePath;
+        this.parallelLoad = parallelLoad;
+        this.schema = schema;
+        this.binaryPath = binaryPath;
+        if (schema != null) records = new ColumnarRecords(schema);
         loadFromFile();
     }
 
     private void loadFromFile() throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine())!= null) {
-                String[] fields = line.split(",");
-                if (fields.length == 5) {
-                    records.add(new Record(fields[0].trim(), fields[1].trim(), fields[2].trim(),
-                                           fields[3].trim(), fields[4].trim()));
+        long start = System.nanoTime();
+        try {
+            loadErrors.clear();
+            records.clear();
+            if (binaryPath != null && loadFromBinary()) return;
+            File file = new File(filePath);
+            if (parallelLoad && file.length() >= PARALLEL_LOAD_THRESHOLD) {
+                List<Chunk> chunks = ParallelCsvReader.read(file, ForkJoinPool.commonPool(), this::parseChunk);
+                int total = 0;
+                for (Chunk c : chunks) total += c.records.size();
+                if (records instanceof ArrayList<Record> list) list.ensureCapacity(total);
+                long lineOffset = 0;
+                for (Chunk c : chunks) {
+                    records.addAll(c.records);
+                    for (int i = 0; i < c.errorLines.size(); i++) {
+                        reportMalformed(lineOffset + c.errorLines.get(i), c.errorReasons.get(i));
+                    }
+                    lineOffset += c.lines;
+                }
+            } else {
+                try (CsvTokenizer t = new CsvTokenizer(new FileReader(file))) {
+                    Chunk c = parseChunk(t);
+                    records.addAll(c.records);
+                    for (int i = 0; i < c.errorLines.size(); i++) reportMalformed(c.errorLines.get(i), c.errorReasons.get(i));
                 }
             }
+            ROWS_READ.add(records.size() + loadErrors.size());
+            BYTES_READ.add(file.length());
+            changesOnDisk = replayChanges();
+            savedCount = records.size();
+            pendingChanges.clear();
+            rebuildIndexes();
+        } finally {
+            LOAD_TIME.recordSince(start);
         }
     }
 
+    private File changesFile() {
+        return new File(filePath + ".changes");
+    }
+
+    // The file and .changes log as they are on disk. Saves append to one or the other
+    // and rewrites replace the file, so any save changes a length or a modified time.
+    private String sourceTag() {
+        File file = new File(filePath), changes = changesFile();
+        return file.length() + ":" + file.lastModified() + ":" + changes.length() + ":" + changes.lastModified();
+    }
+
+    // records from binaryPath if it was saved from the files as they are now; false
+    // (with records left empty) if it is missing, stale or unreadable
+    private boolean loadFromBinary() {
+        File binary = new File(binaryPath);
+        if (!binary.exists()) return false;
+        try (BinaryTable table = BinaryTable.open(binaryPath)) {
+            if (table.source().isEmpty() || !table.source().equals(sourceTag())) return false;
+            table.scan().forEach(records::add);
+            ROWS_READ.add(records.size());
+            BYTES_READ.add(binary.length());
+            changesOnDisk = countChanges();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Not loading " + binaryPath + ": " + e.getMessage());
+            records.clear();
+            return false;
+        }
+        baseLength = -1;
+        savedCount = records.size();
+        pendingChanges.clear();
+        rebuildIndexes();
+        return true;
+    }
+
+    // entries in the .changes log, for the rewrite threshold
+    private int countChanges() throws IOException {
+        File file = changesFile();
+        if (!file.exists()) return 0;
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                if (!line.isEmpty() && !line.startsWith("G,")) count++;
+            }
+        }
+        return count;
+    }
+
+    // D,<index> deletes a row; U,<index>,<5 fields> replaces one.
+    // Indexes are positions in the list at the time of the change.
+    private int replayChanges() throws IOException {
+        File file = changesFile();
+        baseLength = -1;
+        if (!file.exists()) return 0;
+        int applied = 0;
+        boolean stale = false;
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(file))) {
+            boolean more = t.next();
+            ChangesBase base = more ? ChangesBase.parse(t) : null;
+            if (base != null) {
+                baseLength = base.length;
+                baseCrc = base.crc;
+                stale = !base.matches(new File(filePath));
+                more = !stale && t.next();
+            }
+            for (; more; more = t.next()) {
+                applied++;
+                try {
+                    int index = (int) t.fieldAsLong(1);
+                    if (t.fieldEquals(0, "D") && t.fieldCount() == 2) {
+                        records.remove(index);
+                    } else if (t.fieldEquals(0, "U") && t.fieldCount() == 7) {
+                        records.set(index, new Record(t.field(2), t.field(3), t.field(4), t.field(5), t.field(6)));
+                    } else {
+                        reportMalformed(t.lineNumber(), "unknown change in " + file.getName());
+                    }
+                } catch (RuntimeException e) {
+                    reportMalformed(t.lineNumber(), "bad change in " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (stale) {
+            System.err.println("Ignoring " + file.getName() + ": it was written against an older " + filePath);
+            baseLength = -1;
+            Files.delete(file.toPath());
+        }
+        return applied;
+    }
+
+    // The G,<length>,<crc> line a .changes log opens with. Shared with RecordCursor,
+    // which must skip a stale log just as a load does.
+    static final class ChangesBase {
+        final long length;   // -1 for a torn header, which matches nothing
+        final long crc;
+
+        private ChangesBase(long length, long crc) {
+            this.length = length;
+            this.crc = crc;
+        }
+
+        // the header on t's current row; null if the row isn't one (logs from before headers)
+        static ChangesBase parse(CsvTokenizer t) {
+            if (!t.fieldEquals(0, "G")) return null;
+            try {
+                return new ChangesBase(t.fieldAsLong(1), t.fieldAsLong(2));
+            } catch (RuntimeException e) {
+                return new ChangesBase(-1, 0);
+            }
+        }
+
+        // false once file has been rewritten since the log was started
+        boolean matches(File file) throws IOException {
+            return length >= 0 && crcOf(file, length) == crc;
+        }
+    }
+
+    // CRC32 of the first length bytes of file; -1 if it is shorter
+    private static long crcOf(File file, long length) throws IOException {
+        if (file.length() < length) return -1;
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            long left = length;
+            while (left > 0) {
+                int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                if (n < 0) return -1;
+                crc.update(buf, 0, n);
+                left -= n;
+            }
+        }
+        return crc.getValue();
+    }
+
+    // records and malformed rows from one stretch of the file; line numbers are relative to it
+    private static final class Chunk {
+        final List<Record> records;
+        final List<Long> errorLines = new ArrayList<>();
+        final List<String> errorReasons = new ArrayList<>();
+        long lines;
+
+        Chunk(List<Record> records) { this.records = records; }
+    }
+
+    private Chunk parseChunk(CsvTokenizer t) throws IOException {
+        ColumnarRecords columns = records instanceof ColumnarRecords shared
+            ? new ColumnarRecords(schema, shared.dictionaries()) : null;
+        Chunk c = new Chunk(columns != null ? columns : new ArrayList<>());
+        while (t.next()) {
+            String error = t.error();
+            if (error == null && t.fieldCount() != 5) error = "expected 5 fields, found " + t.fieldCount();
+            if (error == null) {
+                if (columns != null) {
+                    error = columns.appendFields(t);
+                } else {
+                    c.records.add(new Record(t.fieldTrimmed(0), t.fieldTrimmed(1), t.fieldTrimmed(2),
+                                             t.fieldTrimmed(3), t.fieldTrimmed(4)));
+                }
+            }
+            if (error != null) {
+                c.errorLines.add(t.lineNumber());
+                c.errorReasons.add(error);
+            }
+        }
+        c.lines = t.linesRead();
+        return c;
+    }
+
+    private void rebuildIndexes() {
+        for (RecordIndex index : indexes) {
+            index.clear();
+            for (Record r : records) index.add(r);
+        }
+    }
+
+    private void reportMalformed(long line, String reason) {
+        String message = filePath + " line " + line + ": " + reason;
+        loadErrors.add(message);
+        System.err.println("Skipping malformed row: " + message);
+    }
+
+    // rows skipped by the last load, as "file line N: reason"
+    public List<String> getLoadErrors() { return Collections.unmodifiableList(loadErrors); }
+
+    // Writes only what changed since the last save: new records are appended to the
+    // file and edits/deletes to the .changes log, until the log outgrows the threshold
     public void saveToFile() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+        long start = System.nanoTime();
+        try {
+            if (changesOnDisk + pendingChanges.size() > rewriteThreshold) {
+                rewriteFile();
+                return;
+            }
+            File file = new File(filePath);
+            if (savedCount < records.size()) {
+                long before = file.length();
+                ROWS_WRITTEN.add(records.size() - savedCount);
+                boolean needsNewline = endsWithoutNewline(file);
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+                    if (needsNewline) writer.newLine();
+                    for (int i = savedCount; i < records.size(); i++) writeRecord(writer, records.get(i));
+                }
+                BYTES_WRITTEN.add(file.length() - before);
+                savedCount = records.size();
+            }
+            if (!pendingChanges.isEmpty()) {
+                long before = changesFile().length();
+                boolean newLog = !changesFile().exists();
+                if (newLog && baseLength < 0) {
+                    baseLength = file.length();
+                    baseCrc = crcOf(file, baseLength);
+                }
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(changesFile(), true))) {
+                    if (newLog) {
+                        writer.write("G," + baseLength + "," + baseCrc);
+                        writer.newLine();
+                    }
+                    for (String change : pendingChanges) {
+                        writer.write(change);
+                        writer.newLine();
+                    }
+                }
+                ROWS_WRITTEN.add(pendingChanges.size());
+                BYTES_WRITTEN.add(changesFile().length() - before);
+                changesOnDisk += pendingChanges.size();
+                pendingChanges.clear();
+            }
+        } finally {
+            SAVE_TIME.recordSince(start);
+        }
+    }
+
+    // Full rewrite of the file; folds in and removes the .changes log. The new file is
+    // on disk before it replaces the old one, so a crash leaves one or the other.
+    public void rewriteFile() throws IOException {
+        long start = System.nanoTime();
+        try {
+            File file = new File(filePath);
+            File tmp = new File(filePath + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(checked))) {
+                for (Record r : records) writeRecord(writer, r);
+                writer.flush();
+                out.getFD().sync();
+            }
+            ROWS_WRITTEN.add(records.size());
+            BYTES_WRITTEN.add(tmp.length());
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            baseLength = file.length();
+            baseCrc = checked.getChecksum().getValue();
+            Files.deleteIfExists(changesFile().toPath());
+            savedCount = records.size();
+            pendingChanges.clear();
+            changesOnDisk = 0;
+        } finally {
+            REWRITE_TIME.recordSince(start);
+        }
+    }
+
+    // Write the table in BinaryTable's columnar format, using this database's schema.
+    // With nothing unsaved, the table is tagged with the files' current state so a
+    // later load can read it instead (see the binaryPath constructor).
+    public void saveBinary(String path, boolean compress) throws IOException {
+        long start = System.nanoTime();
+        try {
+            boolean saved = savedCount == records.size() && pendingChanges.isEmpty();
+            BinaryTable.write(path, schema, records, compress, saved ? sourceTag() : "");
+        } finally {
+            SAVE_BINARY_TIME.recordSince(start);
+        }
+    }
+
+    // number of logged edits/deletes tolerated before saveToFile rewrites the whole file
+    public void setRewriteThreshold(int rewriteThreshold) { this.rewriteThreshold = rewriteThreshold; }
+
+    private static void writeRecord(BufferedWriter writer, Record r) throws IOException {
+        writer.write(String.join(",", CsvTokenizer.quote(r.field1), CsvTokenizer.quote(r.field2),
+                                 CsvTokenizer.quote(r.field3), CsvTokenizer.quote(r.field4),
+                                 CsvTokenizer.quote(r.field5)));
+        writer.newLine();
+    }
+
+    private static boolean endsWithoutNewline(File file) throws IOException {
+        if (file.length() == 0) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(file.length() - 1);
+            return raf.read() != '\n';
+        }
+    }
+
+    public int size() { return records.size(); }
+    public Record getRecord(int index) { return records.get(index); }
+
+    public void updateRecord(int index, Record record) {
+        long start = System.nanoTime();
+        try {
+            Record old = records.set(index, record);
+            for (RecordIndex ix : indexes) {
+                ix.remove(old);
+                ix.add(record);
+            }
+            // unsaved rows are written with their latest contents anyway
+            if (index < savedCount) {
+                pendingChanges.add(String.join(",", "U", String.valueOf(index), CsvTokenizer.quote(record.field1),
+                                               CsvTokenizer.quote(record.field2), CsvTokenizer.quote(record.field3),
+                                               CsvTokenizer.quote(record.field4), CsvTokenizer.quote(record.field5)));
+            }
+        } finally {
+            UPDATE_TIME.recordSince(start);
+        }
+    }
+
+    public Record deleteRecord(int index) {
+        long start = System.nanoTime();
+        try {
+            Record old = records.remove(index);
+            for (RecordIndex ix : indexes) ix.remove(old);
+            if (index < savedCount) {
+                pendingChanges.add("D," + index);
+                savedCount--;
+            }
+            return old;
+        } finally {
+            DELETE_TIME.recordSince(start);
+        }
+    }
+
+    public void addRecord(Record record) {
+        long start = System.nanoTime();
+        try {
+            records.add(record);
+            for (RecordIndex index : indexes) index.add(record);
+        } finally {
+            ADD_TIME.recordSince(start);
+        }
+    }
+
+    // Exact-match index on a field (1-5), kept current by addRecord and reloads
+    public void createIndex(int field, boolean ignoreCase) {
+        long start = System.nanoTime();
+        try {
+            if (findHashIndex(field, ignoreCase) != null) return;
+            HashRecordIndex index = new HashRecordIndex(field, ignoreCase);
+            for (Record r : records) index.add(r);
+            indexes.add(index);
+        } finally {
+            INDEX_TIME.recordSince(start);
+        }
+    }
+
+    // Ordered index for range/prefix queries; numeric compares values as numbers (e.g. age)
+    public void createSortedIndex(int field, boolean numeric) {
+        long start = System.nanoTime();
+        try {
+            if (findSortedIndex(field) != null) return;
+            SortedRecordIndex<?> index = numeric ? SortedRecordIndex.numeric(field) : SortedRecordIndex.text(field, true);
+            for (Record r : records) index.add(r);
+            indexes.add(index);
+        } finally {
+            INDEX_TIME.recordSince(start);
+        }
+    }
+
+    // Records whose field equals value; uses an index when one fits, otherwise scans
+    public List<Record> lookup(int field, String value, boolean ignoreCase) {
+        long start = System.nanoTime();
+        try {
+            HashRecordIndex index = findHashIndex(field, ignoreCase);
+            if (index != null) return index.get(value);
+            List<Record> result = new ArrayList<>();
             for (Record r : records) {
-                writer.write(String.join(",", r.field1, r.field2, r.field3, r.field4, r.field5));
-                writer.newLine();
+                String v = r.get(field);
+                if (v != null && (ignoreCase ? v.equalsIgnoreCase(value) : v.equals(value))) result.add(r);
             }
+            return result;
+        } finally {
+            LOOKUP_TIME.recordSince(start);
+        }
+    }
+
+    // Inclusive range over a sorted index; null bounds are open
+    public List<Record> range(int field, String from, String to) {
+        long start = System.nanoTime();
+        try {
+            return requireSortedIndex(field).range(from, to);
+        } finally {
+            RANGE_TIME.recordSince(start);
+        }
+    }
+
+    // Case-insensitive prefix match over a sorted index; a numeric one is scanned instead
+    public List<Record> prefix(int field, String prefix) {
+        long start = System.nanoTime();
+        try {
+            SortedRecordIndex<?> index = requireSortedIndex(field);
+            if (index.isText()) return index.prefix(prefix);
+            List<Record> result = new ArrayList<>();
+            for (Record r : records) {
+                String v = r.get(field);
+                if (v != null && v.regionMatches(true, 0, prefix, 0, prefix.length())) result.add(r);
+            }
+            return result;
+        } finally {
+            PREFIX_TIME.recordSince(start);
         }
     }
 
-    public void addRecord(Record record) { records.add(record); }
     public List<Record> searchByField1(String value) {
-        List<Record> result = new ArrayList<>();
-        for (Record r : records) {
-            if (r.field1.equalsIgnoreCase(value)) result.add(r);
+        return lookup(1, value, true);
+    }
+
+    public RecordQuery query() {
+        return new RecordQuery(this);
+    }
+
+    List<Record> records() { return records; }
+
+    HashRecordIndex findHashIndex(int field, boolean ignoreCase) {
+        for (RecordIndex index : indexes) {
+            if (index instanceof HashRecordIndex h && h.field == field && h.ignoreCase == ignoreCase) return h;
+        }
+        return null;
+    }
+
+    SortedRecordIndex<?> findSortedIndex(int field) {
+        for (RecordIndex index : indexes) {
+            if (index instanceof SortedRecordIndex<?> sorted && sorted.field == field) return sorted;
         }
-        return result;
+        return null;
+    }
+
+    private SortedRecordIndex<?> requireSortedIndex(int field) {
+        SortedRecordIndex<?> index = findSortedIndex(field);
+        if (index == null) throw new IllegalStateException("No sorted index on field " + field);
+        return index;
     }
+
     public void printAllRecords() {
         for (Record r : records) System.out.println(r);
     }
+
+    // Rows of a database file read lazily, without loading the file; close the
+    // stream (try-with-resources) if it may not be read to the end
+    public static Stream<Record> stream(String filePath) throws IOException {
+        RecordCursor cursor = new RecordCursor(filePath);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    // printAllRecords for a file, in constant memory
+    public static void printAllRecords(String filePath) throws IOException {
+        try (RecordCursor cursor = new RecordCursor(filePath)) {
+            while (cursor.hasNext()) System.out.println(cursor.next());
+        }
+    }
 }
 
 
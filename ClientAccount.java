@@ -0,0 +1,6 @@
+// Account type with a £1,500 overdraft
+class ClientAccount extends Account {
+    static final double OVERDRAFT_LIMIT = 1500.0;
+
+    public ClientAccount(AccountTable table, String accNo) { super(table, accNo, AccountTable.CLIENT, OVERDRAFT_LIMIT); }
+}
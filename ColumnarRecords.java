@@ -0,0 +1,250 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Records stored column by column: INT columns as int[], DICTIONARY columns as
+// int codes into a per-column dictionary, TEXT columns as String[]. A Record is
+// only built when get() is called, and every call builds a new one.
+//
+// Fields come back exactly as stored. A null DICTIONARY field is code -1. An INT
+// field that is null or not written the way String.valueOf(int) writes it ("030",
+// "+7", " 5") keeps its text in the column's exceptions array, allocated on first
+// use; null is kept there as "", which never parses as an int.
+class ColumnarRecords extends AbstractList<Record> implements RandomAccess {
+    private static final int NULL_CODE = -1;
+
+    private final RecordSchema schema;
+    private final ValueDictionary[] dictionaries;
+    private final Object[] columns;   // String[] or int[] per column
+    private final String[][] exceptions = new String[5][];   // INT columns only
+    private int size;
+
+    // string <-> code table; safe to share between chunks parsed in parallel
+    static final class ValueDictionary {
+        private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[16];
+        private int count;
+
+        int encode(String value) {
+            if (value == null) return NULL_CODE;
+            Integer code = codes.get(value);
+            if (code != null) return code;
+            synchronized (this) {
+                code = codes.get(value);
+                if (code != null) return code;
+                if (count == values.length) values = Arrays.copyOf(values, count * 2);
+                values[count] = value;
+                codes.put(value, count);
+                return count++;
+            }
+        }
+
+        String decode(int code) { return code == NULL_CODE ? null : values[code]; }
+
+        int size() { return codes.size(); }
+    }
+
+    ColumnarRecords(RecordSchema schema) {
+        this(schema, newDictionaries(schema));
+    }
+
+    // rows from chunks that share dictionaries can be merged by copying codes
+    ColumnarRecords(RecordSchema schema, ValueDictionary[] dictionaries) {
+        this.schema = schema;
+        this.dictionaries = dictionaries;
+        this.columns = new Object[5];
+        for (int c = 0; c < 5; c++) {
+            columns[c] = schema.type(c) == RecordSchema.ColumnType.TEXT ? new String[64] : new int[64];
+        }
+    }
+
+    static ValueDictionary[] newDictionaries(RecordSchema schema) {
+        ValueDictionary[] dictionaries = new ValueDictionary[5];
+        for (int c = 0; c < 5; c++) {
+            if (schema.type(c) == RecordSchema.ColumnType.DICTIONARY) dictionaries[c] = new ValueDictionary();
+        }
+        return dictionaries;
+    }
+
+    ValueDictionary[] dictionaries() { return dictionaries; }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Record get(int row) {
+        Objects.checkIndex(row, size);
+        return new Record(value(0, row), value(1, row), value(2, row), value(3, row), value(4, row));
+    }
+
+    // one field without building a Record; column is 0-based
+    String value(int column, int row) {
+        return switch (schema.type(column)) {
+            case TEXT -> ((String[]) columns[column])[row];
+            case INT -> {
+                String text = exception(column, row);
+                yield text == null ? String.valueOf(((int[]) columns[column])[row]) : text.isEmpty() ? null : text;
+            }
+            case DICTIONARY -> dictionaries[column].decode(((int[]) columns[column])[row]);
+        };
+    }
+
+    RecordSchema.ColumnType type(int column) { return schema.type(column); }
+
+    // INT column value; column is 0-based. Only meaningful where isPlainInt holds.
+    int intValue(int column, int row) { return ((int[]) columns[column])[row]; }
+
+    // false when the INT field is null or its text isn't the canonical form of intValue
+    boolean isPlainInt(int column, int row) { return exception(column, row) == null; }
+
+    private String exception(int column, int row) {
+        String[] e = exceptions[column];
+        return e == null ? null : e[row];
+    }
+
+    @Override
+    public Record set(int row, Record record) {
+        Record old = get(row);
+        int[] encoded = encode(record.field1, record.field2, record.field3, record.field4, record.field5);
+        store(row, record, encoded);
+        return old;
+    }
+
+    @Override
+    public void add(int row, Record record) {
+        Objects.checkIndex(row, size + 1);
+        int[] encoded = encode(record.field1, record.field2, record.field3, record.field4, record.field5);
+        ensureCapacity(size + 1);
+        shift(row, row + 1, size - row);
+        size++;
+        store(row, record, encoded);
+        modCount++;
+    }
+
+    @Override
+    public Record remove(int row) {
+        Record old = get(row);
+        shift(row + 1, row, size - row - 1);
+        size--;
+        for (int c = 0; c < 5; c++) {
+            if (columns[c] instanceof String[] s) s[size] = null;
+            if (exceptions[c] != null) exceptions[c][size] = null;
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        for (int c = 0; c < 5; c++) {
+            if (columns[c] instanceof String[] s) Arrays.fill(s, null);
+            exceptions[c] = null;
+        }
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Record> records) {
+        if (!(records instanceof ColumnarRecords other) || other.dictionaries != dictionaries) {
+            return super.addAll(records);
+        }
+        ensureCapacity(size + other.size);
+        for (int c = 0; c < 5; c++) {
+            System.arraycopy(other.columns[c], 0, columns[c], size, other.size);
+            if (other.exceptions[c] != null) System.arraycopy(other.exceptions[c], 0, exceptions(c), size, other.size);
+        }
+        size += other.size;
+        modCount++;
+        return other.size > 0;
+    }
+
+    // Append the tokenizer's current record; returns an error message instead when a
+    // field doesn't fit its column type
+    String appendFields(CsvTokenizer t) {
+        String[] values = new String[5];
+        for (int c = 0; c < 5; c++) values[c] = t.fieldTrimmed(c);
+        int[] encoded;
+        try {
+            encoded = encode(values);
+        } catch (NumberFormatException e) {
+            return e.getMessage();
+        }
+        ensureCapacity(size + 1);
+        store(size, values, encoded);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    private int[] encode(String... values) {
+        int[] encoded = new int[5];
+        for (int c = 0; c < 5; c++) {
+            switch (schema.type(c)) {
+                case INT -> {
+                    if (values[c] == null) continue;
+                    try {
+                        encoded[c] = Integer.parseInt(values[c].trim());
+                    } catch (NumberFormatException e) {
+                        throw new NumberFormatException("field " + (c + 1) + " is not an integer: " + values[c]);
+                    }
+                }
+                case DICTIONARY -> encoded[c] = dictionaries[c].encode(values[c]);
+                case TEXT -> { }
+            }
+        }
+        return encoded;
+    }
+
+    private void store(int row, Record record, int[] encoded) {
+        store(row, new String[] { record.field1, record.field2, record.field3, record.field4, record.field5 }, encoded);
+    }
+
+    private void store(int row, String[] values, int[] encoded) {
+        for (int c = 0; c < 5; c++) {
+            if (columns[c] instanceof String[] s) {
+                s[row] = values[c];
+                continue;
+            }
+            ((int[]) columns[c])[row] = encoded[c];
+            if (schema.type(c) != RecordSchema.ColumnType.INT) continue;
+            String v = values[c];
+            if (v == null) exceptions(c)[row] = "";
+            else if (!isCanonicalInt(v)) exceptions(c)[row] = v;
+            else if (exceptions[c] != null) exceptions[c][row] = null;
+        }
+    }
+
+    // what String.valueOf(int) would write, given that v already parsed as an int
+    private static boolean isCanonicalInt(String v) {
+        int i = v.charAt(0) == '-' ? 1 : 0;
+        if (i == v.length() || (v.charAt(i) == '0' && v.length() > 1)) return false;   // "-", "030", "-0"
+        for (; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return true;
+    }
+
+    private String[] exceptions(int column) {
+        if (exceptions[column] == null) exceptions[column] = new String[((int[]) columns[column]).length];
+        return exceptions[column];
+    }
+
+    private void shift(int from, int to, int length) {
+        if (length <= 0) return;
+        for (int c = 0; c < 5; c++) {
+            System.arraycopy(columns[c], from, columns[c], to, length);
+            if (exceptions[c] != null) System.arraycopy(exceptions[c], from, exceptions[c], to, length);
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        int capacity = columns[0] instanceof String[] s ? s.length : ((int[]) columns[0]).length;
+        if (needed <= capacity) return;
+        int grown = Math.max(needed, capacity + (capacity >> 1));
+        for (int c = 0; c < 5; c++) {
+            columns[c] = columns[c] instanceof String[] s ? Arrays.copyOf(s, grown) : Arrays.copyOf((int[]) columns[c], grown);
+            if (exceptions[c] != null) exceptions[c] = Arrays.copyOf(exceptions[c], grown);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// Account type with a £2,500 overdraft
+class CommunityAccount extends Account {
+    static final double OVERDRAFT_LIMIT = 2500.0;
+
+    public CommunityAccount(AccountTable table, String accNo) { super(table, accNo, AccountTable.COMMUNITY, OVERDRAFT_LIMIT); }
+}
@@ -0,0 +1,103 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory index of users.csv. Loaded once; appended lines are picked up
+// incrementally by reading only the bytes past the last indexed offset.
+class CredentialStore {
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    private final File file;
+    private final ConcurrentHashMap<String, String> passwords = new ConcurrentHashMap<>();
+
+    private long indexedLength;      // offset just past the last complete line indexed
+    private long indexedModified;
+    private volatile long lastCheck;
+
+    CredentialStore(String fileName) {
+        this.file = new File(fileName);
+        refresh(true);
+    }
+
+    boolean matches(String username, String password) {
+        refreshIfStale();
+        String stored = passwords.get(username.trim());
+        return stored != null && stored.equals(password.trim());
+    }
+
+    boolean exists(String username) {
+        refreshIfStale();
+        return passwords.containsKey(username.trim());
+    }
+
+    // false if the username is already taken. Both are trimmed, as matches() does;
+    // IllegalArgumentException for a line break, since the file is indexed by line.
+    synchronized boolean register(String username, String password) throws IOException {
+        username = username.trim();
+        password = password.trim();
+        if (hasLineBreak(username) || hasLineBreak(password)) {
+            throw new IllegalArgumentException("Line breaks are not allowed");
+        }
+        // read lines other processes added since the last look, however recent, so
+        // the duplicate check sees them and the re-read below doesn't step over them
+        refresh(false);
+        if (passwords.containsKey(username)) return false;
+        try (FileWriter fw = new FileWriter(file, StandardCharsets.UTF_8, true)) {
+            // the previous last line may lack a newline; don't glue onto it
+            if (file.length() > indexedLength) fw.write("\n");
+            fw.write(CsvTokenizer.quote(username) + "," + CsvTokenizer.quote(password) + "\n");
+        }
+        passwords.put(username, password);
+        refresh(false);
+        return true;
+    }
+
+    private static boolean hasLineBreak(String s) {
+        return s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0;
+    }
+
+    int size() { return passwords.size(); }
+
+    // look at the file at most once per CHECK_INTERVAL_MS
+    private void refreshIfStale() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_INTERVAL_MS) return;
+        lastCheck = now;
+        refresh(false);
+    }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    private synchronized void refresh(boolean full) {
+        long length = file.length();
+        long modified = file.lastModified();
+        if (!full && length == indexedLength && modified == indexedModified) return;
+        // shrunk or rewritten in place: start over
+        if (full || length < indexedLength || (length == indexedLength && modified != indexedModified)) {
+            passwords.clear();
+            indexedLength = 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] tail = new byte[(int) (length - indexedLength)];
+            raf.seek(indexedLength);
+            raf.readFully(tail);
+            int lineStart = 0;
+            for (int i = 0; i <= tail.length; i++) {
+                if (i < tail.length && tail[i] != '\n') continue;
+                index(new String(tail, lineStart, i - lineStart, StandardCharsets.UTF_8), indexedLength + lineStart == 0);
+                // a trailing partial line is indexed now and read again once it is completed
+                if (i < tail.length) lineStart = i + 1;
+            }
+            indexedLength += lineStart;
+            indexedModified = modified;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void index(String line, boolean header) throws IOException {
+        if (header) return; // skip header
+        try (CsvTokenizer t = new CsvTokenizer(new StringReader(line))) {
+            if (t.next() && t.error() == null && t.fieldCount() >= 2) passwords.put(t.fieldTrimmed(0), t.fieldTrimmed(1));
+        }
+    }
+}
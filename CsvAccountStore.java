@@ -0,0 +1,67 @@
+import java.io.*;
+import java.util.*;
+
+// The original accounts.csv layout: every save rewrites the whole file
+class CsvAccountStore implements AccountStore {
+    static final String HEADER = "username,accountNumber,type,balance,twoSignatories,secondSignatory";
+
+    private final File file;
+
+    CsvAccountStore(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    File getFile() { return file; }
+
+    @Override
+    public List<AccountRow> load(String username) throws IOException {
+        List<AccountRow> rows = new ArrayList<>();
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(file))) {
+            BYTES_READ.add(file.length());
+            t.next(); // skip header
+            while (t.next()) {
+                ROWS_READ.increment();
+                // skip other users' rows before building anything
+                if (username != null && (t.fieldCount() == 0 || !t.fieldEquals(0, username))) continue;
+                AccountRow row = AccountRow.read(t, 0);
+                if (row != null) rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void save(AccountChange change) throws IOException {
+        saveAll(List.of(change));
+    }
+
+    // Save all users' accounts (merge the changed users into file)
+    @Override
+    public synchronized void saveAll(List<AccountChange> changes) throws IOException {
+        Map<String, List<AccountRow>> allAccounts = new LinkedHashMap<>();
+        try {
+            for (AccountRow row : load(null)) {
+                allAccounts.computeIfAbsent(row.username, k -> new ArrayList<>()).add(row);
+            }
+        } catch (FileNotFoundException e) {
+            // file may not exist yet; we'll create it when writing
+        }
+
+        // replace each changed user's group with the current in-memory accounts
+        for (AccountChange change : changes) allAccounts.put(change.username, change.userRows());
+
+        List<AccountRow> rows = new ArrayList<>();
+        allAccounts.values().forEach(rows::addAll);
+        writeAll(rows);
+    }
+
+    // now write everything back to the CSV
+    synchronized void writeAll(Collection<AccountRow> rows) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            pw.println(HEADER);
+            for (AccountRow row : rows) pw.println(row.toCsv());
+        }
+        ROWS_WRITTEN.add(rows.size());
+        BYTES_WRITTEN.add(file.length());
+    }
+}
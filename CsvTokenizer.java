@@ -0,0 +1,233 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Streaming RFC 4180 reader. Records are decoded into one reusable char buffer and
+// fields are addressed by offset, so a row costs no split arrays and only the
+// Strings a caller actually asks for. Quoted fields may hold commas, doubled
+// quotes and line breaks. Blank lines are skipped.
+class CsvTokenizer implements Closeable {
+    private final Reader in;
+    private final char[] buf;
+    private int pos, limit;
+    private boolean eof;
+
+    // current record
+    private char[] data = new char[256];
+    private int length;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private int fields;
+    private long line = 1;          // line the next record starts on
+    private long recordLine;
+    private String error;
+
+    CsvTokenizer(Reader in) {
+        this(in, 64 * 1024);
+    }
+
+    CsvTokenizer(Reader in, int bufferSize) {
+        this.in = in;
+        this.buf = new char[bufferSize];
+    }
+
+    // Advance to the next record; false at end of input.
+    // A malformed record is still returned, with error() describing the problem.
+    boolean next() throws IOException {
+        length = 0;
+        fields = 0;
+        error = null;
+        int c;
+        // skip blank lines
+        while ((c = read()) == '\n' || c == '\r') {
+            if (c == '\r' && peek() == '\n') read();
+            line++;
+        }
+        if (c < 0) return false;
+        recordLine = line;
+
+        while (true) {
+            if (fields == starts.length) growFields();
+            boolean isQuoted = c == '"';
+            quoted[fields] = isQuoted;
+            starts[fields] = length;
+            if (isQuoted) {
+                c = readQuoted();
+            } else {
+                while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                    append((char) c);
+                    c = read();
+                }
+            }
+            ends[fields++] = length;
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') read();
+            if (c >= 0) line++;
+            return true;
+        }
+    }
+
+    // reads a quoted field after its opening quote; returns the delimiter that ended it
+    private int readQuoted() throws IOException {
+        int c;
+        while (true) {
+            c = read();
+            if (c < 0) {
+                if (error == null) error = "unterminated quoted field";
+                return c;
+            }
+            if (c == '"') {
+                if (peek() == '"') {
+                    read();
+                    append('"');
+                    continue;
+                }
+                break;
+            }
+            if (c == '\n') line++;
+            append((char) c);
+        }
+        // closing quote must be followed by a delimiter
+        c = read();
+        if (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+            if (error == null) error = "unexpected character after closing quote";
+            while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                append((char) c);
+                c = read();
+            }
+        }
+        return c;
+    }
+
+    int fieldCount() { return fields; }
+
+    // line number (1-based) the current record started on
+    long lineNumber() { return recordLine; }
+
+    // newlines consumed so far (a count of complete lines once input is exhausted)
+    long linesRead() { return line - 1; }
+
+    // null unless the current record is malformed
+    String error() { return error; }
+
+    String field(int i) {
+        checkIndex(i);
+        return new String(data, starts[i], ends[i] - starts[i]);
+    }
+
+    // unquoted fields lose surrounding whitespace; quoted fields are kept as written
+    String fieldTrimmed(int i) {
+        checkIndex(i);
+        int s = starts[i], e = ends[i];
+        if (!quoted[i]) {
+            while (s < e && data[s] <= ' ') s++;
+            while (e > s && data[e - 1] <= ' ') e--;
+        }
+        return new String(data, s, e - s);
+    }
+
+    boolean fieldIsEmpty(int i) {
+        checkIndex(i);
+        return starts[i] == ends[i];
+    }
+
+    boolean fieldEquals(int i, String value) {
+        checkIndex(i);
+        int len = ends[i] - starts[i];
+        if (len != value.length()) return false;
+        for (int k = 0; k < len; k++) {
+            if (data[starts[i] + k] != value.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // decimal integer straight from the buffer; NumberFormatException if not one
+    long fieldAsLong(int i) {
+        checkIndex(i);
+        int s = starts[i], e = ends[i];
+        if (s == e) throw new NumberFormatException("empty field " + i);
+        boolean negative = data[s] == '-';
+        if (negative || data[s] == '+') s++;
+        if (s == e) throw new NumberFormatException("no digits in field " + i);
+        long value = 0;
+        for (int k = s; k < e; k++) {
+            int d = data[k] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("not a number: " + field(i));
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    double fieldAsDouble(int i) {
+        return Double.parseDouble(field(i));
+    }
+
+    boolean fieldAsBoolean(int i) {
+        checkIndex(i);
+        int len = ends[i] - starts[i];
+        if (len != 4) return false;
+        int s = starts[i];
+        return (data[s] | 0x20) == 't' && (data[s + 1] | 0x20) == 'r' &&
+               (data[s + 2] | 0x20) == 'u' && (data[s + 3] | 0x20) == 'e';
+    }
+
+    // value as it should appear in a CSV file: quoted only when it has to be
+    static String quote(String value) {
+        if (value == null) return "";
+        boolean needs = false;
+        for (int i = 0; i < value.length() && !needs; i++) {
+            char c = value.charAt(i);
+            needs = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return needs ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= fields) throw new IndexOutOfBoundsException("field " + i + " of " + fields);
+    }
+
+    private void append(char c) {
+        if (length == data.length) data = Arrays.copyOf(data, length * 2);
+        data[length++] = c;
+    }
+
+    private void growFields() {
+        int n = starts.length * 2;
+        starts = Arrays.copyOf(starts, n);
+        ends = Arrays.copyOf(ends, n);
+        quoted = Arrays.copyOf(quoted, n);
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,332 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+// Periodic processing over every account in a store: interest on positive
+// balances, a charge on overdrawn ones and a flat fee, priced by account type.
+// Users are taken in username order and priced in parallel partitions on a
+// fork-join pool; the results are committed commitUsers users at a time with
+// one AccountStore.saveAll.
+//
+// Restart: <checkpoint> holds "runId,lastUser,complete". Before each commit the
+// batch's new balances go to <checkpoint>.pending, and once the commit returns the
+// checkpoint moves past it. A run that died mid-commit writes the pending balances
+// again (they are absolute, so twice is harmless) and carries on after them, so no
+// account is charged twice for one runId. Re-running a finished runId does nothing;
+// a new runId is refused until the previous run has finished.
+//
+// Charges and fees stop at the account's overdraft limit: an account is never
+// taken past it, and one already past it pays nothing.
+//
+// Each commit's interest, charges and fees go to the transaction history as ADJUST
+// entries once the store has them and before the checkpoint moves. A replayed batch
+// that already reached the history is not posted twice (see TransactionHistory.record).
+//
+// The batch needs the store to itself; in a live process go through Banking.runEndOfDay.
+//
+//   java EndOfDayBatch <dir> <runId> [--store csv|journal|mapped] [--threads N]
+//        [--commitUsers N] [--partitionUsers N]
+public class EndOfDayBatch {
+    private static final LatencyHistogram PRICE_TIME = Metrics.timer("eod.price");
+    private static final LatencyHistogram COMMIT_TIME = Metrics.timer("eod.commit");
+    private static final LongAdder ACCOUNTS = Metrics.counter("eod.accounts");
+
+    // annual rates, accrued for one day per run; amounts are rounded to the penny per account
+    static final class Rule {
+        final double interestRate;    // on positive balances
+        final double overdraftRate;   // on negative balances
+        final long feeMinor;          // flat, every run
+
+        Rule(double interestRate, double overdraftRate, long feeMinor) {
+            this.interestRate = interestRate;
+            this.overdraftRate = overdraftRate;
+            this.feeMinor = feeMinor;
+        }
+
+        long interest(long balanceMinor) {
+            return balanceMinor > 0 ? Math.round(balanceMinor * interestRate / 365) : 0;
+        }
+
+        long overdraftCharge(long balanceMinor) {
+            return balanceMinor < 0 ? Math.round(-balanceMinor * overdraftRate / 365) : 0;
+        }
+    }
+
+    static Map<String, Rule> defaultRules() {
+        Map<String, Rule> rules = new HashMap<>();
+        rules.put("SmallBusinessAccount", new Rule(0.005, 0.150, 25));
+        rules.put("CommunityAccount",     new Rule(0.010, 0.100, 0));
+        rules.put("ClientAccount",        new Rule(0.015, 0.199, 10));
+        return rules;
+    }
+
+    static final class Report {
+        int users, accounts, resumedAfter, commits;
+        long interestMinor, overdraftMinor, feesMinor, nanos;
+        boolean alreadyComplete;
+
+        @Override
+        public String toString() {
+            if (alreadyComplete) return "already complete";
+            return users + " users, " + accounts + " accounts in " + nanos / 1_000_000 + " ms (" +
+                   commits + " commits" + (resumedAfter > 0 ? ", resumed after " + resumedAfter + " users" : "") +
+                   "); interest " + AccountTable.toMajor(interestMinor) +
+                   ", overdraft charges " + AccountTable.toMajor(overdraftMinor) +
+                   ", fees " + AccountTable.toMajor(feesMinor);
+        }
+    }
+
+    private final Map<String, Rule> rules;   // by AccountRow.type; other types are left alone
+    private final ForkJoinPool pool;
+    private final File checkpointFile;
+    private final File pendingFile;
+    private final int commitUsers;
+    private final int partitionUsers;
+
+    EndOfDayBatch(Map<String, Rule> rules, ForkJoinPool pool, String checkpointFileName,
+                  int commitUsers, int partitionUsers) {
+        this.rules = rules;
+        this.pool = pool;
+        this.checkpointFile = new File(checkpointFileName);
+        this.pendingFile = new File(checkpointFileName + ".pending");
+        this.commitUsers = commitUsers;
+        this.partitionUsers = partitionUsers;
+    }
+
+    Report run(AccountStore store, String runId) throws IOException {
+        return run(store, runId, null);
+    }
+
+    // history: where the postings are recorded; null for none
+    Report run(AccountStore store, String runId, TransactionHistory history) throws IOException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        String[] checkpoint = readCheckpoint();
+        boolean sameRun = checkpoint != null && checkpoint[0].equals(runId);
+        boolean complete = checkpoint != null && Boolean.parseBoolean(checkpoint[2]);
+        if (sameRun && complete) {
+            report.alreadyComplete = true;
+            return report;
+        }
+        if (checkpoint != null && !sameRun && !complete) {
+            throw new IOException("End-of-day run " + checkpoint[0] + " has not finished; resume it before starting " + runId);
+        }
+        String lastUser = sameRun && !checkpoint[1].isEmpty() ? checkpoint[1] : null;
+        // a crash during a run's first commit leaves its pending file beside the previous run's checkpoint
+        String recovered = recoverPending(store, runId, history);
+        if (recovered != null) lastUser = recovered;
+
+        // username order is stable across restarts, whatever order the store keeps rows in
+        TreeMap<String, List<AccountRow>> byUser = new TreeMap<>();
+        for (AccountRow row : store.load(null)) byUser.computeIfAbsent(row.username, k -> new ArrayList<>()).add(row);
+        if (lastUser != null) report.resumedAfter = byUser.headMap(lastUser, true).size();
+        List<Map.Entry<String, List<AccountRow>>> users =
+            new ArrayList<>(lastUser == null ? byUser.entrySet() : byUser.tailMap(lastUser, false).entrySet());
+
+        Totals totals = new Totals();
+        for (int from = 0; from < users.size(); from += commitUsers) {
+            int to = Math.min(users.size(), from + commitUsers);
+            AccountChange[] changes = new AccountChange[to - from];
+            long priceStart = System.nanoTime();
+            pool.invoke(new Price(users, from, to, changes, from, totals));
+            PRICE_TIME.recordSince(priceStart);
+
+            List<AccountChange> batch = new ArrayList<>();
+            for (AccountChange change : changes) if (change != null) batch.add(change);
+            String last = users.get(to - 1).getKey();
+            long commitStart = System.nanoTime();
+            writePending(runId, last, batch);
+            if (!batch.isEmpty()) {
+                store.saveAll(batch);
+                if (history != null) history.record(batch);
+            }
+            writeCheckpoint(runId, last, false);
+            Files.deleteIfExists(pendingFile.toPath());
+            COMMIT_TIME.recordSince(commitStart);
+            report.commits++;
+        }
+        writeCheckpoint(runId, users.isEmpty() ? (lastUser == null ? "" : lastUser) : users.get(users.size() - 1).getKey(), true);
+
+        report.users = users.size();
+        report.accounts = (int) totals.accounts.sum();
+        report.interestMinor = totals.interest.sum();
+        report.overdraftMinor = totals.overdraft.sum();
+        report.feesMinor = totals.fees.sum();
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private static final class Totals {
+        final LongAdder accounts = new LongAdder();
+        final LongAdder interest = new LongAdder();
+        final LongAdder overdraft = new LongAdder();
+        final LongAdder fees = new LongAdder();
+    }
+
+    // prices users[from, to) into changes[i - base]; null where nothing moved
+    private final class Price extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Map.Entry<String, List<AccountRow>>> users;
+        private final int from, to, base;
+        private final AccountChange[] changes;
+        private final Totals totals;
+
+        Price(List<Map.Entry<String, List<AccountRow>>> users, int from, int to,
+              AccountChange[] changes, int base, Totals totals) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+            this.changes = changes;
+            this.base = base;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > partitionUsers) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Price(users, from, mid, changes, base, totals),
+                          new Price(users, mid, to, changes, base, totals));
+                return;
+            }
+            long accounts = 0, interest = 0, overdraft = 0, fees = 0;
+            for (int i = from; i < to; i++) {
+                List<AccountRow> rows = users.get(i).getValue();
+                long[] adjustments = new long[rows.size()];
+                boolean changed = false;
+                for (int r = 0; r < rows.size(); r++) {
+                    AccountRow row = rows.get(r);
+                    Rule rule = rules.get(row.type);
+                    if (rule == null) continue;
+                    long balance = AccountTable.toMinor(row.balance);
+                    long in = rule.interest(balance);
+                    long room = Math.max(0, balance + in + row.overdraftMinor());   // before the limit
+                    long charge = Math.min(rule.overdraftCharge(balance), room);
+                    long fee = Math.min(rule.feeMinor, room - charge);
+                    long after = balance + in - charge - fee;
+                    accounts++;
+                    interest += in;
+                    overdraft += charge;
+                    fees += fee;
+                    if (after == balance) continue;
+                    row.balance = AccountTable.toMajor(after);
+                    adjustments[r] = after - balance;
+                    changed = true;
+                }
+                if (changed) changes[i - base] = new AccountChange(users.get(i).getKey(), rows, adjustments);
+            }
+            totals.accounts.add(accounts);
+            totals.interest.add(interest);
+            totals.overdraft.add(overdraft);
+            totals.fees.add(fees);
+            ACCOUNTS.add(accounts);
+        }
+    }
+
+    // first line: runId,lastUser; then every row of the users about to be committed,
+    // each followed by its adjustment in minor units
+    private void writePending(String runId, String lastUser, List<AccountChange> batch) throws IOException {
+        File tmp = new File(pendingFile.getPath() + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(tmp)))) {
+            pw.println(CsvTokenizer.quote(runId) + "," + CsvTokenizer.quote(lastUser));
+            for (AccountChange change : batch) {
+                List<AccountRow> rows = change.userRows();
+                for (int i = 0; i < rows.size(); i++) pw.println(rows.get(i).toCsv() + "," + change.adjustmentsMinor[i]);
+            }
+        }
+        Files.move(tmp.toPath(), pendingFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Re-commits a pending batch of this run; returns its last user, or null if there
+    // was none. A pending batch of another run is never dropped: that run must resume.
+    private String recoverPending(AccountStore store, String runId, TransactionHistory history) throws IOException {
+        if (!pendingFile.exists()) return null;
+        String lastUser;
+        Map<String, List<AccountRow>> byUser = new LinkedHashMap<>();
+        Map<String, List<Long>> adjustmentsByUser = new HashMap<>();
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(pendingFile))) {
+            if (!t.next() || t.fieldCount() < 2) throw new IOException("Unreadable pending batch " + pendingFile);
+            if (!t.fieldEquals(0, runId)) {
+                throw new IOException("End-of-day run " + t.field(0) + " left an uncommitted batch; resume it before starting " + runId);
+            }
+            lastUser = t.field(1);
+            while (t.next()) {
+                AccountRow row = AccountRow.read(t, 0);
+                if (row == null) continue;
+                byUser.computeIfAbsent(row.username, k -> new ArrayList<>()).add(row);
+                long adjustment = t.fieldCount() > 6 && !t.fieldIsEmpty(6) ? t.fieldAsLong(6) : 0;
+                adjustmentsByUser.computeIfAbsent(row.username, k -> new ArrayList<>()).add(adjustment);
+            }
+        }
+        List<AccountChange> batch = new ArrayList<>();
+        byUser.forEach((user, rows) -> batch.add(
+            new AccountChange(user, rows, adjustmentsByUser.get(user).stream().mapToLong(Long::longValue).toArray())));
+        if (!batch.isEmpty()) {
+            store.saveAll(batch);
+            if (history != null) history.record(batch);
+        }
+        writeCheckpoint(runId, lastUser, false);
+        Files.delete(pendingFile.toPath());
+        return lastUser;
+    }
+
+    // {runId, lastUser, complete}; null before the first run
+    private String[] readCheckpoint() throws IOException {
+        if (!checkpointFile.exists()) return null;
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(checkpointFile))) {
+            if (!t.next() || t.fieldCount() < 3) return null;
+            return new String[] { t.field(0), t.field(1), t.field(2) };
+        }
+    }
+
+    private void writeCheckpoint(String runId, String lastUser, boolean complete) throws IOException {
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(tmp))) {
+            pw.println(CsvTokenizer.quote(runId) + "," + CsvTokenizer.quote(lastUser) + "," + complete);
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: EndOfDayBatch <dir> <runId> [--store csv|journal|mapped] [--threads N] " +
+                               "[--commitUsers N] [--partitionUsers N]");
+            return;
+        }
+        File dir = new File(args[0]);
+        String runId = args[1];
+        String storeKind = "csv";
+        int threads = Runtime.getRuntime().availableProcessors(), commitUsers = 100_000, partitionUsers = 2_048;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--store" -> storeKind = args[i + 1];
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--commitUsers" -> commitUsers = Integer.parseInt(args[i + 1]);
+                case "--partitionUsers" -> partitionUsers = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        CsvAccountStore csv = new CsvAccountStore(new File(dir, "accounts.csv").getPath());
+        AccountStore store = switch (storeKind.toLowerCase()) {
+            case "journal" -> new JournaledAccountStore(csv, new File(dir, "accounts.journal").getPath());
+            case "mapped" -> new MappedAccountStore(new File(dir, "accounts.dat").getPath(), true);
+            default -> csv;
+        };
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TransactionHistory history = new TransactionHistory(new File(dir, "transactions.log").getPath(), true);
+        try {
+            EndOfDayBatch batch = new EndOfDayBatch(defaultRules(), pool, new File(dir, "eod.checkpoint").getPath(),
+                                                    commitUsers, partitionUsers);
+            System.out.println(batch.run(store, runId, history));
+        } finally {
+            pool.shutdown();
+            history.close();
+            if (store instanceof Closeable c) c.close();
+        }
+    }
+}
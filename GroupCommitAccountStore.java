@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// Merges concurrent saves into shared writes. The first change to arrive opens a
+// group; the group is flushed through the delegate's saveAll once maxDelayMillis
+// has passed or maxGroupSize changes have joined. Callers block until their
+// group is written, so a save still returns only once it is persisted.
+class GroupCommitAccountStore implements AccountStore {
+    private final AccountStore delegate;
+    private final long maxDelayNanos;
+    private final int maxGroupSize;
+
+    private List<AccountChange> pendingChanges = new ArrayList<>();
+    private CompletableFuture<Void> pendingGroup = new CompletableFuture<>();
+    private long groupOpenedAt;
+
+    GroupCommitAccountStore(AccountStore delegate, long maxDelayMillis, int maxGroupSize) {
+        this.delegate = delegate;
+        this.maxDelayNanos = maxDelayMillis * 1_000_000;
+        this.maxGroupSize = maxGroupSize;
+        Thread flusher = new Thread(this::flushLoop, "group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    AccountStore getDelegate() { return delegate; }
+
+    @Override
+    public List<AccountRow> load(String username) throws IOException {
+        return delegate.load(username);
+    }
+
+    @Override
+    public int highestAccountNumber() throws IOException {
+        return delegate.highestAccountNumber();
+    }
+
+    @Override
+    public void checkNewAccount(String username, String secondSignatory) {
+        delegate.checkNewAccount(username, secondSignatory);
+    }
+
+    @Override
+    public void save(AccountChange change) throws IOException {
+        saveAll(List.of(change));
+    }
+
+    @Override
+    public void saveAll(List<AccountChange> changes) throws IOException {
+        CompletableFuture<Void> group;
+        synchronized (this) {
+            if (pendingChanges.isEmpty()) groupOpenedAt = System.nanoTime();
+            pendingChanges.addAll(changes);
+            group = pendingGroup;
+            notifyAll();
+        }
+        try {
+            group.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for group commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<AccountChange> changes;
+            CompletableFuture<Void> group;
+            synchronized (this) {
+                try {
+                    while (pendingChanges.isEmpty()) wait();
+                    long remaining;
+                    while (pendingChanges.size() < maxGroupSize &&
+                           (remaining = maxDelayNanos - (System.nanoTime() - groupOpenedAt)) > 0) {
+                        wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                changes = pendingChanges;
+                group = pendingGroup;
+                pendingChanges = new ArrayList<>();
+                pendingGroup = new CompletableFuture<>();
+            }
+            try {
+                delegate.saveAll(changes);
+                group.complete(null);
+            } catch (IOException | RuntimeException e) {
+                group.completeExceptionally(e);
+            }
+        }
+    }
+}
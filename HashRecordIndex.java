@@ -0,0 +1,49 @@
+import java.util.*;
+
+// Exact-match index; with ignoreCase, keys are folded character by character, upper
+// then lower case, which is how String.equalsIgnoreCase compares. Whole-string case
+// mapping differs ("ß".toUpperCase() is "SS"), so it isn't used.
+class HashRecordIndex extends RecordIndex {
+    final boolean ignoreCase;
+    private final Map<String, List<Record>> buckets = new HashMap<>();
+
+    HashRecordIndex(int field, boolean ignoreCase) {
+        super(field);
+        this.ignoreCase = ignoreCase;
+    }
+
+    // null values share a bucket of their own
+    private String key(String value) {
+        if (!ignoreCase || value == null) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        value.codePoints().forEach(c -> sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        return sb.toString();
+    }
+
+    @Override
+    void add(Record r) {
+        buckets.computeIfAbsent(key(r.get(field)), k -> new ArrayList<>()).add(r);
+    }
+
+    @Override
+    void remove(Record r) {
+        String key = key(r.get(field));
+        List<Record> bucket = buckets.get(key);
+        if (bucket == null) return;
+        removeSame(bucket, r);
+        if (bucket.isEmpty()) buckets.remove(key);
+    }
+
+    @Override
+    void clear() { buckets.clear(); }
+
+    List<Record> get(String value) {
+        List<Record> bucket = buckets.get(key(value));
+        return bucket == null ? List.of() : Collections.unmodifiableList(bucket);
+    }
+
+    int count(String value) {
+        List<Record> bucket = buckets.get(key(value));
+        return bucket == null ? 0 : bucket.size();
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Background checkpointing for JournaledAccountStore: every interval, compact the
+// journal if it has grown past minBytes. Compactions are timed as journal.compact.
+class JournalCompactor {
+    private static final LatencyHistogram COMPACT_TIME = Metrics.timer("journal.compact");
+    private static final LongAdder COMPACT_FAILURES = Metrics.counter("journal.compactFailures");
+
+    private final JournaledAccountStore store;
+    private final long minBytes;
+    private final ScheduledExecutorService scheduler;
+
+    JournalCompactor(JournaledAccountStore store, long intervalSeconds, long minBytes) {
+        this.store = store;
+        this.minBytes = minBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    void runOnce() {
+        if (store.journalBytes() < minBytes) return;
+        long start = System.nanoTime();
+        try {
+            store.compact();
+        } catch (IOException e) {
+            COMPACT_FAILURES.increment();
+            e.printStackTrace();
+        } finally {
+            COMPACT_TIME.recordSince(start);
+        }
+    }
+
+    void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// Base accounts.csv plus an append-only journal: each change costs one appended line.
+// Journal lines:
+//   CREATE,<account row>
+//   DEPOSIT|WITHDRAW|TRANSFER|ADJUST,username,amount,accNo,balance[,accNo,balance...]
+// each followed by ,#<crc>: the CRC32 of the line before it, in hex.
+//
+// Replay stops at the first line that is unterminated or fails its CRC, so a torn
+// final write can't pass for a shorter balance. On startup the active segment is
+// cut back to just before such a line, ahead of any new appends. Lines without a
+// CRC are from before it was added and are accepted until the first line with one.
+//
+// The journal is split into numbered segments (accounts.journal.1, .2, ...).
+// compact() folds closed segments into a fresh accounts.csv snapshot and records the
+// last folded segment in a checkpoint file, so recovery only replays the tail.
+// Entries carry resulting balances, so replaying a segment twice is harmless.
+//
+// A compaction swaps snapshot, checkpoint and segments under the write side of
+// snapshotLock, with the new files on disk first; load holds the read side, so it
+// never pairs an old snapshot with segments a compaction has already removed.
+//
+// Recovery cost is published as the journal.replay timer (one sample per load),
+// journal.replayedEntries and journal.replayedSegments, and the
+// journal.snapshotAgeSeconds gauge (-1 before the first compaction).
+class JournaledAccountStore implements AccountStore {
+    private static final LatencyHistogram REPLAY_TIME = Metrics.timer("journal.replay");
+    private static final LongAdder REPLAYED_ENTRIES = Metrics.counter("journal.replayedEntries");
+    private static final LongAdder REPLAYED_SEGMENTS = Metrics.counter("journal.replayedSegments");
+
+    private final CsvAccountStore base;
+    private final String journalFileName;
+    private final File checkpointFile;
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private final boolean fsync;
+    private FileOutputStream journalOut;
+    private Writer journal;
+    private int activeSegment;
+
+    // recovery figures from the most recent load()
+    private volatile long lastReplayNanos;
+    private volatile int lastReplayEntries;
+    private volatile int lastReplaySegments;
+
+    JournaledAccountStore(CsvAccountStore base, String journalFileName) throws IOException {
+        this(base, journalFileName, true);
+    }
+
+    // fsync: force each write to disk before save/saveAll return
+    JournaledAccountStore(CsvAccountStore base, String journalFileName, boolean fsync) throws IOException {
+        this.base = base;
+        this.fsync = fsync;
+        this.journalFileName = journalFileName;
+        this.checkpointFile = new File(journalFileName + ".checkpoint");
+        this.activeSegment = Math.max((int) readCheckpoint()[0] + 1, lastSegment());
+        truncateTornTail(segmentFile(activeSegment));
+        Metrics.gauge("journal.snapshotAgeSeconds", this::snapshotAgeSeconds);
+    }
+
+    // drop whatever follows the last intact line of the segment appends will go to
+    private static void truncateTornTail(File segment) throws IOException {
+        if (!segment.exists()) return;
+        long intact = readIntact(segment, payload -> {});
+        if (intact == segment.length()) return;
+        System.err.println("Truncating " + segment.getName() + " from " + segment.length() + " to " + intact +
+                           " bytes: torn or corrupt entry");
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(intact);
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public List<AccountRow> load(String username) throws IOException {
+        long start = System.nanoTime();
+        Map<String, AccountRow> rows = new LinkedHashMap<>();
+        int entries = 0, segments = 0;
+        snapshotLock.readLock().lock();
+        try {
+            int fromSegment = (int) readCheckpoint()[0] + 1;
+            for (AccountRow row : base.load(username)) rows.put(row.accountNumber, row);
+            for (int seg : segmentsAfter(fromSegment - 1)) {
+                entries += replay(segmentFile(seg), username, rows);
+                segments++;
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        lastReplayNanos = System.nanoTime() - start;
+        lastReplayEntries = entries;
+        lastReplaySegments = segments;
+        REPLAY_TIME.record(lastReplayNanos);
+        REPLAYED_ENTRIES.add(entries);
+        REPLAYED_SEGMENTS.add(segments);
+        return new ArrayList<>(rows.values());
+    }
+
+    // apply journal entries for username (or everyone when null) on top of rows
+    private static int replay(File segment, String username, Map<String, AccountRow> rows) throws IOException {
+        int[] applied = { 0 };
+        BYTES_READ.add(segment.length());
+        readIntact(segment, payload -> {
+            ROWS_READ.increment();
+            try (CsvTokenizer t = new CsvTokenizer(new StringReader(payload))) {
+                if (!t.next()) return;
+                if (t.fieldEquals(0, "CREATE")) {
+                    AccountRow row = AccountRow.read(t, 1);
+                    if (row != null && (username == null || row.username.equals(username))) {
+                        rows.put(row.accountNumber, row);
+                        applied[0]++;
+                    }
+                    return;
+                }
+                if (t.fieldCount() < 5 || (username != null && !t.fieldEquals(1, username))) return;
+                for (int i = 3; i + 1 < t.fieldCount(); i += 2) {
+                    AccountRow row = rows.get(t.field(i));
+                    if (row == null) continue;
+                    try { row.balance = t.fieldAsDouble(i + 1); } catch (NumberFormatException ignored) {}
+                }
+                applied[0]++;
+            }
+        });
+        return applied[0];
+    }
+
+    private interface LineHandler {
+        void line(String payload) throws IOException;
+    }
+
+    // Hands each intact line's payload (CRC stripped) to handler, in order, and
+    // returns the byte offset just past the last one. Stops at the first line that
+    // has no newline, fails its CRC, or lacks one after lines that had it.
+    private static long readIntact(File segment, LineHandler handler) throws IOException {
+        long intact = 0, offset = 0;
+        boolean checksummed = false;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(segment), 64 * 1024)) {
+            for (int b; (b = in.read()) >= 0; ) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+                int mark = text.lastIndexOf(",#");
+                String payload = mark < 0 ? null : text.substring(0, mark);
+                if (payload != null && checksum(payload).equals(text.substring(mark + 2))) {
+                    checksummed = true;
+                } else if (payload == null && !checksummed) {
+                    payload = text;   // written before lines carried a CRC
+                } else {
+                    return intact;
+                }
+                intact = offset;
+                if (!payload.isEmpty()) handler.line(payload);
+            }
+        }
+        return intact;
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    @Override
+    public void save(AccountChange change) throws IOException {
+        saveAll(List.of(change));
+    }
+
+    // one write (and at most one fsync) for the whole list
+    @Override
+    public synchronized void saveAll(List<AccountChange> changes) throws IOException {
+        if (journal == null) {
+            journalOut = new FileOutputStream(segmentFile(activeSegment), true);
+            journal = new BufferedWriter(new OutputStreamWriter(journalOut, StandardCharsets.UTF_8));
+        }
+        long before = journalOut.getChannel().size();
+        for (AccountChange change : changes) {
+            String payload = format(change);
+            journal.write(payload);
+            journal.write(",#");
+            journal.write(checksum(payload));
+            journal.write('\n');
+        }
+        journal.flush();
+        ROWS_WRITTEN.add(changes.size());
+        BYTES_WRITTEN.add(journalOut.getChannel().size() - before);
+        if (fsync) journalOut.getChannel().force(false);
+    }
+
+    static String format(AccountChange change) {
+        if (change.op == AccountChange.Op.CREATE) {
+            return "CREATE," + AccountRow.of(change.username, change.accounts[0]).toCsv();
+        }
+        StringBuilder sb = new StringBuilder(64)
+            .append(change.op).append(',')
+            .append(CsvTokenizer.quote(change.username)).append(',')
+            .append(change.amount);
+        for (int i = 0; i < change.accountNumbers.length; i++) {
+            sb.append(',').append(change.accountNumbers[i])
+              .append(',').append(change.balances[i]);
+        }
+        return sb.toString();
+    }
+
+    // Fold every closed segment into a new snapshot, then drop those segments.
+    // Appends carry on into a fresh segment while the snapshot is written.
+    synchronized void rotate() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            journalOut = null;
+        }
+        activeSegment++;
+    }
+
+    void compact() throws IOException {
+        int upTo;
+        synchronized (this) {
+            if (!segmentFile(activeSegment).exists()) return; // nothing new since the last checkpoint
+            rotate();
+            upTo = activeSegment - 1;
+        }
+        synchronized (base) {
+            Map<String, AccountRow> rows = new LinkedHashMap<>();
+            try {
+                for (AccountRow row : base.load(null)) rows.put(row.accountNumber, row);
+            } catch (FileNotFoundException e) {
+                // no snapshot yet
+            }
+            List<Integer> folded = new ArrayList<>();
+            for (int seg : segmentsAfter((int) readCheckpoint()[0])) {
+                if (seg > upTo) break;
+                replay(segmentFile(seg), null, rows);
+                folded.add(seg);
+            }
+
+            File tmp = new File(base.getFile().getPath() + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out))) {
+                writer.write(CsvAccountStore.HEADER);
+                writer.write(System.lineSeparator());
+                for (AccountRow row : rows.values()) {
+                    writer.write(row.toCsv());
+                    writer.write(System.lineSeparator());
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+
+            snapshotLock.writeLock().lock();
+            try {
+                Files.move(tmp.toPath(), base.getFile().toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                writeCheckpoint(upTo);
+                // the renames must be durable before the segments they replace are gone
+                syncDirectory(base.getFile());
+                syncDirectory(checkpointFile);
+                for (int seg : folded) Files.deleteIfExists(segmentFile(seg).toPath());
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static void syncDirectory(File file) throws IOException {
+        try (FileChannel dir = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (UnsupportedOperationException | AccessDeniedException e) {
+            // directories can't be opened or synced on this platform (Windows)
+        }
+    }
+
+    // seconds since the last compaction wrote a snapshot; -1 if none has
+    long snapshotAgeSeconds() {
+        long created = readCheckpoint()[1];
+        return created == 0 ? -1 : (System.currentTimeMillis() - created) / 1000;
+    }
+
+    // e.g. "snapshot age 42s, replayed 17 entries from 1 segment(s) in 2 ms"
+    String recoveryStats() {
+        long seconds = snapshotAgeSeconds();
+        String age = seconds < 0 ? "none" : seconds + "s";
+        return "snapshot age " + age + ", replayed " + lastReplayEntries + " entries from " +
+               lastReplaySegments + " segment(s) in " + lastReplayNanos / 1_000_000 + " ms";
+    }
+
+    long journalBytes() {
+        long total = 0;
+        for (int seg : segmentsAfter((int) readCheckpoint()[0])) total += segmentFile(seg).length();
+        return total;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(journalFileName + "." + segment);
+    }
+
+    // segment numbers greater than after, ascending
+    private List<Integer> segmentsAfter(int after) {
+        List<Integer> result = new ArrayList<>();
+        File dir = new File(journalFileName).getAbsoluteFile().getParentFile();
+        String prefix = new File(journalFileName).getName() + ".";
+        String[] names = dir.list();
+        if (names == null) return result;
+        for (String name : names) {
+            if (!name.startsWith(prefix)) continue;
+            try {
+                int seg = Integer.parseInt(name.substring(prefix.length()));
+                if (seg > after) result.add(seg);
+            } catch (NumberFormatException ignored) {} // .checkpoint, .tmp
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private int lastSegment() {
+        List<Integer> segments = segmentsAfter(0);
+        return segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+    }
+
+    // {last folded segment, snapshot time millis}; {0, 0} before the first compaction
+    private long[] readCheckpoint() {
+        try (BufferedReader br = new BufferedReader(new FileReader(checkpointFile))) {
+            String[] parts = br.readLine().split(",");
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+        } catch (IOException | RuntimeException e) {
+            return new long[] { 0, 0 };
+        }
+    }
+
+    private void writeCheckpoint(int segment) throws IOException {
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try (Writer writer = new OutputStreamWriter(out)) {
+            writer.write(segment + "," + System.currentTimeMillis() + System.lineSeparator());
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Just enough JSON for flat request and response bodies: an object of string,
+// number, boolean or null values. Nested values are rejected.
+class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    static Map<String, Object> parseObject(String text) {
+        Json p = new Json(text);
+        Map<String, Object> values = new LinkedHashMap<>();
+        p.expect('{');
+        if (p.peek() == '}') {
+            p.pos++;
+        } else {
+            do {
+                String key = p.string();
+                p.expect(':');
+                values.put(key, p.value());
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        if (p.peek() != -1) throw p.error("trailing characters");
+        return values;
+    }
+
+    // value as a JSON string literal, or null
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private Object value() {
+        int c = peek();
+        if (c == '"') return string();
+        if (text.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+        if (text.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+        if (text.startsWith("null", pos)) { pos += 4; return null; }
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+        if (start == pos) throw error("unexpected value");
+        try {
+            return Double.parseDouble(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("bad number");
+        }
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) throw error("unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (pos >= text.length()) throw error("unterminated string");
+            char e = text.charAt(pos++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (pos + 4 > text.length()) throw error("bad escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad escape");
+                    }
+                    pos += 4;
+                }
+                default -> sb.append(e);   // \" \\ \/
+            }
+        }
+    }
+
+    // next non-space character, or -1 at the end
+    private int peek() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        return pos < text.length() ? text.charAt(pos) : -1;
+    }
+
+    private boolean consume(char c) {
+        if (peek() != c) return false;
+        pos++;
+        return true;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) throw error("expected '" + c + "'");
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Bad JSON at " + pos + ": " + message);
+    }
+}
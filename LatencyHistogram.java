@@ -0,0 +1,82 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram. Values (nanoseconds) land in log-linear buckets:
+// one group per power of two, split into SUB_BUCKETS steps, so percentiles are
+// within ~12% of the true value at any scale. Recording is four lock-free updates:
+// the bucket, the count and total adders, and the max accumulator.
+class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    // time since a System.nanoTime() taken at the start
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    private static int bucketOf(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);   // >= SUB_BITS
+        int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // upper bound of the values a bucket holds
+    private static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    long count() { return count.sum(); }
+
+    long totalNanos() { return total.sum(); }
+
+    long maxNanos() { return max.get(); }
+
+    double meanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    // value at or below which the given fraction (0..1) of recordings fall
+    long percentileNanos(double fraction) {
+        long n = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) n += snapshot[i] = buckets.get(i);
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(bucketLimit(i), max.get());
+        }
+        return max.get();
+    }
+
+    static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    String summary() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                             count(), meanNanos() / 1000.0, micros(percentileNanos(0.5)), micros(percentileNanos(0.9)),
+                             micros(percentileNanos(0.99)), micros(percentileNanos(0.999)), micros(maxNanos()));
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load test against one shared Banking engine. Each worker thread
+// repeatedly logs in as a random user, runs a burst of deposits, withdrawals and
+// transfers on that user's accounts, checks them against their overdraft
+// limits, and logs out. At the end it prints throughput and latency percentiles
+// per operation. It also checks that the store's total balance moved by exactly
+// deposits minus withdrawals, so transfers neither created nor lost money.
+//
+//   java LoadDriver <dir> [--threads 16] [--seconds 30] [--opsPerSession 20]
+//        [--mix deposit,withdraw,transfer weights, default 4,3,4] [--store csv|journal]
+//        [--groupCommitMillis N] [--seed S]
+// <dir> holds users.csv and accounts.csv, e.g. from SyntheticData. The store there is modified.
+public class LoadDriver {
+    private enum Kind { LOGIN, DEPOSIT, WITHDRAW, TRANSFER }
+
+    private final Banking banking;
+    private final AccountStore store;
+    private final List<String[]> users;   // username, password
+    private final int opsPerSession;
+    private final int[] mix;              // cumulative deposit/withdraw/transfer weights
+
+    private final Map<Kind, LatencyHistogram> latency = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> succeeded = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> rejected = new EnumMap<>(Kind.class);
+    private final LongAdder depositedMinor = new LongAdder();
+    private final LongAdder withdrawnMinor = new LongAdder();
+    private final LongAdder overdraftViolations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    LoadDriver(Banking banking, AccountStore store, List<String[]> users, int opsPerSession, int[] weights) {
+        this.banking = banking;
+        this.store = store;
+        this.users = users;
+        this.opsPerSession = opsPerSession;
+        this.mix = new int[weights.length];
+        for (int i = 0, sum = 0; i < weights.length; i++) mix[i] = sum += weights[i];
+        for (Kind k : Kind.values()) {
+            latency.put(k, new LatencyHistogram());
+            succeeded.put(k, new LongAdder());
+            rejected.put(k, new LongAdder());
+        }
+    }
+
+    private void runSession(Random random) {
+        String[] user = users.get(random.nextInt(users.size()));
+        long start = System.nanoTime();
+        Session session = banking.openSession(user[0], user[1]);
+        latency.get(Kind.LOGIN).recordSince(start);
+        count(Kind.LOGIN, session != null);
+        if (session == null) return;
+        try {
+            List<Account> accounts = new ArrayList<>(session.getAccounts());
+            if (accounts.isEmpty()) return;
+            for (int i = 0; i < opsPerSession; i++) {
+                Account a = accounts.get(random.nextInt(accounts.size()));
+                double amount = (1 + random.nextInt(20_000)) / 100.0;
+                int pick = random.nextInt(mix[mix.length - 1]);
+                start = System.nanoTime();
+                if (pick < mix[0]) {
+                    boolean ok = banking.deposit(session, a.getAccountNumber(), amount);
+                    latency.get(Kind.DEPOSIT).recordSince(start);
+                    if (ok) depositedMinor.add(AccountTable.toMinor(amount));
+                    count(Kind.DEPOSIT, ok);
+                } else if (pick < mix[1]) {
+                    boolean ok = banking.withdraw(session, a.getAccountNumber(), amount);
+                    latency.get(Kind.WITHDRAW).recordSince(start);
+                    if (ok) withdrawnMinor.add(AccountTable.toMinor(amount));
+                    count(Kind.WITHDRAW, ok);
+                } else {
+                    Account b = accounts.get(random.nextInt(accounts.size()));
+                    boolean ok = banking.transfer(session, a.getAccountNumber(), b.getAccountNumber(), amount);
+                    latency.get(Kind.TRANSFER).recordSince(start);
+                    count(Kind.TRANSFER, ok);
+                }
+            }
+            for (Account a : accounts) {
+                if (a.getBalanceMinor() < -AccountTable.toMinor(a.getOverdraftLimit())) overdraftViolations.increment();
+            }
+        } finally {
+            banking.closeSession(session);
+        }
+    }
+
+    private void count(Kind kind, boolean ok) {
+        (ok ? succeeded : rejected).get(kind).increment();
+    }
+
+    private long storeTotalMinor() throws IOException {
+        long total = 0;
+        for (AccountRow row : store.load(null)) total += AccountTable.toMinor(row.balance);
+        return total;
+    }
+
+    // true if every correctness check passed
+    boolean run(int threads, long seconds, long seed) throws Exception {
+        long before = storeTotalMinor();
+        long saveFailuresBefore = Metrics.counter("banking.saveFailures").sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            workers.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        runSession(random);
+                    } catch (RuntimeException e) {
+                        errors.increment();
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : workers) f.get();
+        pool.shutdown();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long after = storeTotalMinor();
+        long saveFailures = Metrics.counter("banking.saveFailures").sum() - saveFailuresBefore;
+
+        long ops = 0;
+        System.out.printf("%-9s %10s %10s %10s %10s %10s %10s %10s%n",
+                          "op", "ok", "rejected", "ops/s", "p50 us", "p90 us", "p99 us", "max us");
+        for (Kind k : Kind.values()) {
+            LatencyHistogram h = latency.get(k);
+            ops += h.count();
+            System.out.printf("%-9s %10d %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", k.name().toLowerCase(),
+                              succeeded.get(k).sum(), rejected.get(k).sum(), h.count() / elapsed,
+                              LatencyHistogram.micros(h.percentileNanos(0.5)), LatencyHistogram.micros(h.percentileNanos(0.9)),
+                              LatencyHistogram.micros(h.percentileNanos(0.99)), LatencyHistogram.micros(h.maxNanos()));
+        }
+        System.out.printf("total     %d ops in %.1f s = %.1f ops/s on %d threads%n", ops, elapsed, ops / elapsed, threads);
+
+        long expected = before + depositedMinor.sum() - withdrawnMinor.sum();
+        boolean conserved = after == expected;
+        System.out.printf("money     before %s, deposited %s, withdrawn %s, expected %s, stored %s: %s%n",
+                          pounds(before), pounds(depositedMinor.sum()), pounds(withdrawnMinor.sum()),
+                          pounds(expected), pounds(after), conserved ? "OK" : "MISMATCH");
+        System.out.println("overdraft violations " + overdraftViolations.sum() + ", save failures " + saveFailures +
+                           ", errors " + errors.sum());
+        boolean passed = conserved && overdraftViolations.sum() == 0 && saveFailures == 0 && errors.sum() == 0;
+        System.out.println(passed ? "PASS" : "FAIL");
+        return passed;
+    }
+
+    private static String pounds(long minor) {
+        return String.format("£%,.2f", AccountTable.toMajor(minor));
+    }
+
+    static List<String[]> readUsers(File file) throws IOException {
+        List<String[]> users = new ArrayList<>();
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(file))) {
+            t.next(); // header
+            while (t.next()) {
+                if (t.fieldCount() >= 2) users.add(new String[] {t.fieldTrimmed(0), t.fieldTrimmed(1)});
+            }
+        }
+        return users;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("usage: LoadDriver <dir> [--threads N] [--seconds N] [--opsPerSession N] " +
+                               "[--mix d,w,t] [--store csv|journal] [--groupCommitMillis N] [--seed S]");
+            return;
+        }
+        File dir = new File(args[0]);
+        int threads = 16, opsPerSession = 20;
+        long seconds = 30, seed = 1, groupCommitMillis = 0;
+        int[] weights = {4, 3, 4};
+        String storeKind = "csv";
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Long.parseLong(args[i + 1]);
+                case "--opsPerSession" -> opsPerSession = Integer.parseInt(args[i + 1]);
+                case "--mix" -> weights = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--store" -> storeKind = args[i + 1];
+                case "--groupCommitMillis" -> groupCommitMillis = Long.parseLong(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (weights.length != 3) throw new IllegalArgumentException("--mix needs deposit,withdraw,transfer weights");
+
+        CsvAccountStore csv = new CsvAccountStore(new File(dir, "accounts.csv").getPath());
+        AccountStore store = "journal".equalsIgnoreCase(storeKind)
+            ? new JournaledAccountStore(csv, new File(dir, "accounts.journal").getPath()) : csv;
+        if (groupCommitMillis > 0) store = new GroupCommitAccountStore(store, groupCommitMillis, 1024);
+        Banking banking = new Banking(store, dir);
+        LoadDriver driver = new LoadDriver(banking, store, readUsers(new File(dir, "users.csv")), opsPerSession, weights);
+        boolean passed = driver.run(threads, seconds, seed);
+        banking.close();
+        System.exit(passed ? 0 : 1);
+    }
+}
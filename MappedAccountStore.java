@@ -0,0 +1,275 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Accounts in a memory-mapped file of fixed-width binary records, so a balance
+// change is a positional write of 8 bytes rather than a file rewrite.
+//
+// Header (64 bytes): magic, version, record size, record count, sequence
+//   (bumped once per persisted change).
+// Record (80 bytes): username[32] | number int | type byte | flags byte | pad[2] |
+//   balance long (pence) | secondSignatory[32]; strings are UTF-8, zero padded.
+//
+// Records are mapped in chunks of CHUNK_RECORDS, added as the file grows, so the
+// file isn't bound by the 2 GB limit of a single mapping.
+class MappedAccountStore implements AccountStore, Closeable {
+    private static final int MAGIC = 0x424E4B41; // "BNKA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 80;
+    private static final int NAME_BYTES = 32;
+    private static final int CHUNK_RECORDS = 1 << 16;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_SIZE;
+
+    private static final int OFF_COUNT = 12;
+    private static final int OFF_SEQUENCE = 16;
+
+    private static final int REC_NUMBER = NAME_BYTES;
+    private static final int REC_TYPE = REC_NUMBER + 4;
+    private static final int REC_FLAGS = REC_TYPE + 1;
+    private static final int REC_BALANCE = REC_FLAGS + 3;
+    private static final int REC_SECOND = REC_BALANCE + 8;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final BitSet dirtyChunks = new BitSet();
+    private int count;
+
+    private final Map<Integer, Integer> recordByNumber = new HashMap<>();
+    private final Map<String, List<Integer>> recordsByUser = new HashMap<>();
+
+    MappedAccountStore(String fileName, boolean fsync) throws IOException {
+        this.fsync = fsync;
+        this.file = new RandomAccessFile(fileName, "rw");
+        this.channel = file.getChannel();
+        boolean fresh = channel.size() < HEADER_SIZE;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (fresh) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, RECORD_SIZE);
+            header.putInt(OFF_COUNT, 0);
+            header.putLong(OFF_SEQUENCE, 0);
+        } else if (header.getInt(0) != MAGIC || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not an account file: " + fileName);
+        }
+        count = header.getInt(OFF_COUNT);
+        for (int i = 0; i < count; i++) index(i);
+    }
+
+    // the chunk holding record, mapping it (and growing the file) on first use
+    private MappedByteBuffer chunk(int record) throws IOException {
+        int c = record / CHUNK_RECORDS;
+        while (chunks.size() <= c) {
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + chunks.size() * CHUNK_BYTES, CHUNK_BYTES));
+        }
+        return chunks.get(c);
+    }
+
+    // byte offset of record within its chunk
+    private static int position(int record) {
+        return record % CHUNK_RECORDS * RECORD_SIZE;
+    }
+
+    private void index(int record) throws IOException {
+        MappedByteBuffer map = chunk(record);
+        int pos = position(record);
+        recordByNumber.put(map.getInt(pos + REC_NUMBER), record);
+        recordsByUser.computeIfAbsent(getString(map, pos, NAME_BYTES), k -> new ArrayList<>()).add(record);
+    }
+
+    long sequence() {
+        return header.getLong(OFF_SEQUENCE);
+    }
+
+    int size() { return count; }
+
+    @Override
+    public synchronized List<AccountRow> load(String username) throws IOException {
+        List<AccountRow> rows = new ArrayList<>();
+        if (username == null) {
+            for (int i = 0; i < count; i++) rows.add(read(i));
+        } else {
+            for (int i : recordsByUser.getOrDefault(username, List.of())) rows.add(read(i));
+        }
+        ROWS_READ.add(rows.size());
+        BYTES_READ.add((long) rows.size() * RECORD_SIZE);
+        return rows;
+    }
+
+    private AccountRow read(int record) throws IOException {
+        MappedByteBuffer map = chunk(record);
+        int pos = position(record);
+        byte flags = map.get(pos + REC_FLAGS);
+        String second = getString(map, pos + REC_SECOND, NAME_BYTES);
+        return new AccountRow(getString(map, pos, NAME_BYTES),
+                              AccountTable.accountNumberOf(map.getInt(pos + REC_NUMBER)),
+                              typeName(map.get(pos + REC_TYPE)),
+                              AccountTable.toMajor(map.getLong(pos + REC_BALANCE)),
+                              (flags & 1) != 0,
+                              second.isEmpty() ? null : second);
+    }
+
+    @Override
+    public synchronized int highestAccountNumber() {
+        int max = 0;
+        for (int number : recordByNumber.keySet()) max = Math.max(max, number);
+        return max;
+    }
+
+    @Override
+    public void save(AccountChange change) throws IOException {
+        saveAll(List.of(change));
+    }
+
+    @Override
+    public synchronized void saveAll(List<AccountChange> changes) throws IOException {
+        for (AccountChange change : changes) {
+            if (change.op == AccountChange.Op.CREATE) {
+                append(AccountRow.of(change.username, change.accounts[0]));
+            } else {
+                for (int i = 0; i < change.accountNumbers.length; i++) {
+                    Integer record = recordByNumber.get(AccountTable.numberOf(change.accountNumbers[i]));
+                    if (record == null) throw new IOException("Account not in store: " + change.accountNumbers[i]);
+                    chunk(record).putLong(position(record) + REC_BALANCE, AccountTable.toMinor(change.balances[i]));
+                    dirtyChunks.set(record / CHUNK_RECORDS);
+                    ROWS_WRITTEN.increment();
+                    BYTES_WRITTEN.add(8);
+                }
+            }
+        }
+        header.putLong(OFF_SEQUENCE, sequence() + changes.size());
+        if (fsync) force();
+    }
+
+    // records first, so the count never covers a record that isn't on disk
+    private void force() {
+        for (int c = dirtyChunks.nextSetBit(0); c >= 0; c = dirtyChunks.nextSetBit(c + 1)) chunks.get(c).force();
+        dirtyChunks.clear();
+        header.force();
+    }
+
+    @Override
+    public void checkNewAccount(String username, String secondSignatory) {
+        checkLength("Username", username);
+        checkLength("Second signatory", secondSignatory);
+    }
+
+    private static void checkLength(String what, String value) {
+        if (value != null && value.getBytes(StandardCharsets.UTF_8).length > NAME_BYTES) {
+            throw new IllegalArgumentException(what + " longer than " + NAME_BYTES + " bytes: " + value);
+        }
+    }
+
+    private void append(AccountRow row) throws IOException {
+        int number = AccountTable.numberOf(row.accountNumber);
+        try {
+            checkNewAccount(row.username, row.secondSignatory);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        Integer existing = recordByNumber.get(number);
+        if (existing != null && !getString(chunk(existing), position(existing), NAME_BYTES).equals(row.username)) {
+            throw new IOException(row.accountNumber + " already belongs to another user");
+        }
+        if (existing == null && count == Integer.MAX_VALUE) throw new IOException("Account file is full");
+        int record = existing != null ? existing : count;
+        MappedByteBuffer map = chunk(record);
+        int pos = position(record);
+        putString(map, pos, NAME_BYTES, row.username);
+        map.putInt(pos + REC_NUMBER, number);
+        map.put(pos + REC_TYPE, typeCode(row.type));
+        map.put(pos + REC_FLAGS, (byte) (row.twoSignatories ? 1 : 0));
+        map.putLong(pos + REC_BALANCE, AccountTable.toMinor(row.balance));
+        putString(map, pos + REC_SECOND, NAME_BYTES, row.secondSignatory);
+        dirtyChunks.set(record / CHUNK_RECORDS);
+        ROWS_WRITTEN.increment();
+        BYTES_WRITTEN.add(RECORD_SIZE);
+        if (existing == null) {
+            count++;
+            header.putInt(OFF_COUNT, count);
+            index(record);
+        }
+    }
+
+    // Replace the contents with every row of a CSV file
+    synchronized void importCsv(CsvAccountStore csv) throws IOException {
+        count = 0;
+        recordByNumber.clear();
+        recordsByUser.clear();
+        header.putInt(OFF_COUNT, 0);
+        for (AccountRow row : csv.load(null)) {
+            try {
+                append(row);
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Skipping " + row.accountNumber + ": " + e.getMessage());
+            }
+        }
+        force();
+    }
+
+    synchronized void exportCsv(CsvAccountStore csv) throws IOException {
+        csv.writeAll(load(null));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+        file.close();
+    }
+
+    private static String getString(MappedByteBuffer map, int pos, int max) {
+        int len = 0;
+        while (len < max && map.get(pos + len) != 0) len++;
+        byte[] bytes = new byte[len];
+        map.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // callers check the length first (checkNewAccount)
+    private static void putString(MappedByteBuffer map, int pos, int max, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        map.put(pos, bytes);
+        for (int i = bytes.length; i < max; i++) map.put(pos + i, (byte) 0);
+    }
+
+    private static byte typeCode(String type) {
+        return switch (type) {
+            case "SmallBusinessAccount" -> AccountTable.SMALL_BUSINESS;
+            case "CommunityAccount"     -> AccountTable.COMMUNITY;
+            case "ClientAccount"        -> AccountTable.CLIENT;
+            default -> 0;
+        };
+    }
+
+    private static String typeName(byte code) {
+        return switch (code) {
+            case AccountTable.SMALL_BUSINESS -> "SmallBusinessAccount";
+            case AccountTable.COMMUNITY      -> "CommunityAccount";
+            case AccountTable.CLIENT         -> "ClientAccount";
+            default -> "Unknown";
+        };
+    }
+
+    // java MappedAccountStore import accounts.csv accounts.dat
+    // java MappedAccountStore export accounts.dat accounts.csv
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.out.println("usage: MappedAccountStore import <csv> <dat> | export <dat> <csv>");
+            return;
+        }
+        boolean importing = args[0].equals("import");
+        CsvAccountStore csv = new CsvAccountStore(importing ? args[1] : args[2]);
+        try (MappedAccountStore mapped = new MappedAccountStore(importing ? args[2] : args[1], true)) {
+            if (importing) mapped.importCsv(csv);
+            else mapped.exportCsv(csv);
+            System.out.println((importing ? "Imported " : "Exported ") + mapped.size() + " accounts");
+        }
+    }
+}
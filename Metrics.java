@@ -0,0 +1,155 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.*;
+
+// Process-wide timers, counters and gauges. Each one is published as a read-only
+// MBean under "banking:type=Timer|Counter|Gauge,name=<name>" when first used, and
+// startReporter() prints them all periodically.
+final class Metrics {
+    private static final String DOMAIN = "banking";
+    private static final Map<String, LatencyHistogram> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {}
+
+    static LatencyHistogram timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> {
+            LatencyHistogram h = new LatencyHistogram();
+            Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+            attributes.put("Count", h::count);
+            attributes.put("MeanMicros", () -> h.meanNanos() / 1000.0);
+            attributes.put("P50Micros", () -> LatencyHistogram.micros(h.percentileNanos(0.5)));
+            attributes.put("P90Micros", () -> LatencyHistogram.micros(h.percentileNanos(0.9)));
+            attributes.put("P99Micros", () -> LatencyHistogram.micros(h.percentileNanos(0.99)));
+            attributes.put("P999Micros", () -> LatencyHistogram.micros(h.percentileNanos(0.999)));
+            attributes.put("MaxMicros", () -> LatencyHistogram.micros(h.maxNanos()));
+            attributes.put("TotalMillis", () -> h.totalNanos() / 1_000_000);
+            register("Timer", n, attributes);
+            return h;
+        });
+    }
+
+    static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> {
+            LongAdder c = new LongAdder();
+            Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+            attributes.put("Value", c::sum);
+            register("Counter", n, attributes);
+            return c;
+        });
+    }
+
+    // a value read when reported; registering the name again replaces the source
+    static void gauge(String name, LongSupplier value) {
+        if (GAUGES.put(name, value) != null) return;
+        Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+        attributes.put("Value", () -> GAUGES.get(name).getAsLong());
+        register("Gauge", name, attributes);
+    }
+
+    @SuppressWarnings("CallToPrintStackTrace")
+    private static void register(String type, String name, Map<String, Supplier<Object>> attributes) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) server.registerMBean(new ReadOnlyBean(attributes), objectName);
+        } catch (JMException e) {
+            e.printStackTrace();   // metrics still work, just not over JMX
+        }
+    }
+
+    // every timer, counter and gauge, one per line, sorted by name
+    static String report() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(TIMERS).forEach((name, h) -> {
+            if (h.count() > 0) sb.append(name).append(' ').append(h.summary()).append('\n');
+        });
+        new TreeMap<>(COUNTERS).forEach((name, c) -> sb.append(name).append(' ').append(c.sum()).append('\n'));
+        new TreeMap<>(GAUGES).forEach((name, g) -> sb.append(name).append(' ').append(g.getAsLong()).append('\n'));
+        return sb.toString();
+    }
+
+    // print report() every intervalSeconds on a daemon thread
+    static ScheduledExecutorService startReporter(long intervalSeconds, PrintStream out) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> out.print("=== metrics ===\n" + report()),
+                                      intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    // -Dbanking.metricsSeconds=N prints the report to stdout every N seconds; once per process
+    static synchronized void startConfiguredReporter() {
+        long interval = Long.getLong("banking.metricsSeconds", 0);
+        if (interval > 0 && reporter == null) reporter = startReporter(interval, System.out);
+    }
+
+    // MBean whose attributes are read from suppliers on each request
+    private static final class ReadOnlyBean implements DynamicMBean {
+        private final Map<String, Supplier<Object>> attributes;
+        private final MBeanInfo info;
+
+        ReadOnlyBean(Map<String, Supplier<Object>> attributes) {
+            this.attributes = attributes;
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            attributes.forEach((name, getter) -> {
+                String type = getter.get().getClass().getName();
+                infos.add(new MBeanAttributeInfo(name, type, name, true, false, false));
+            });
+            this.info = new MBeanInfo(ReadOnlyBean.class.getName(), "Banking metric",
+                                      infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<Object> getter = attributes.get(attribute);
+            if (getter == null) throw new AttributeNotFoundException(attribute);
+            return getter.get();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> getter = attributes.get(name);
+                if (getter != null) list.add(new Attribute(name, getter.get()));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() { return info; }
+    }
+}
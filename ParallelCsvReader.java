@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Splits a CSV file into byte ranges that start on record boundaries and parses
+// them concurrently on a fork-join pool; results come back in file order.
+//
+// A newline only ends a record when it sits outside quotes, so boundaries are
+// found in two parallel passes: count quote bytes per range, then prefix-sum the
+// counts to know whether each range starts inside a quoted field and move its
+// start to the first newline outside quotes.
+class ParallelCsvReader {
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int IO_BUFFER = 64 * 1024;
+
+    interface ChunkParser<T> {
+        T parse(CsvTokenizer tokenizer) throws IOException;
+    }
+
+    static <T> List<T> read(File file, ForkJoinPool pool, ChunkParser<T> parser) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, size / MIN_CHUNK));
+            long[] bounds = new long[chunks + 1];
+            for (int i = 0; i <= chunks; i++) bounds[i] = size * i / chunks;
+
+            // pass 1: quote parity at the start of every range
+            long[] quotes = invokeAll(pool, chunks, i -> countQuotes(channel, bounds[i], bounds[i + 1]));
+            boolean[] insideQuotes = new boolean[chunks];
+            long running = 0;
+            for (int i = 0; i < chunks; i++) {
+                insideQuotes[i] = (running & 1) == 1;
+                running += quotes[i];
+            }
+
+            // pass 2: move each start to just past the first newline outside quotes
+            long[] starts = invokeAll(pool, chunks, i -> i == 0 ? 0L : recordStart(channel, bounds[i], size, insideQuotes[i]));
+            return invokeAllObjects(pool, chunks, i -> {
+                long start = starts[i];
+                long end = i + 1 < chunks ? starts[i + 1] : size;
+                if (start >= end) return parser.parse(new CsvTokenizer(Reader.nullReader()));
+                try (CsvTokenizer t = new CsvTokenizer(new InputStreamReader(
+                        new RangeInputStream(channel, start, end), StandardCharsets.UTF_8))) {
+                    return parser.parse(t);
+                }
+            });
+        }
+    }
+
+    private static long countQuotes(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(IO_BUFFER);
+        long count = 0;
+        for (long pos = from; pos < to; ) {
+            buf.clear().limit((int) Math.min(IO_BUFFER, to - pos));
+            int n = channel.read(buf, pos);
+            if (n <= 0) break;
+            for (int k = 0; k < n; k++) if (buf.get(k) == '"') count++;
+            pos += n;
+        }
+        return count;
+    }
+
+    private static long recordStart(FileChannel channel, long from, long size, boolean quoted) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(IO_BUFFER);
+        for (long pos = from; pos < size; ) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) break;
+            for (int k = 0; k < n; k++) {
+                byte b = buf.get(k);
+                if (b == '"') quoted = !quoted;
+                else if (b == '\n' && !quoted) return pos + k + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private interface IndexTask<T> {
+        T run(int index) throws IOException;
+    }
+
+    private static long[] invokeAll(ForkJoinPool pool, int n, IndexTask<Long> task) throws IOException {
+        List<Long> values = invokeAllObjects(pool, n, task);
+        long[] result = new long[n];
+        for (int i = 0; i < n; i++) result[i] = values.get(i);
+        return result;
+    }
+
+    private static <T> List<T> invokeAllObjects(ForkJoinPool pool, int n, IndexTask<T> task) throws IOException {
+        List<Callable<T>> calls = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            calls.add(() -> task.run(index));
+        }
+        List<T> results = new ArrayList<>(n);
+        try {
+            for (Future<T> f : pool.invokeAll(calls)) results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parallel load interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    // bytes [from, to) of a channel, read with positional reads so ranges can be shared
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long pos;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.pos = from;
+            this.end = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+            if (n > 0) pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // the channel belongs to read()
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 public class Record {
     String field1, field2, field3, field4, field5;
 
@@ -9,6 +11,24 @@ public class Record {
         this.field5 = field5;
     }
 
+    // field by position, 1-5
+    String get(int field) {
+        return switch (field) {
+            case 1 -> field1;
+            case 2 -> field2;
+            case 3 -> field3;
+            case 4 -> field4;
+            case 5 -> field5;
+            default -> throw new IllegalArgumentException("No such field: " + field);
+        };
+    }
+
+    boolean sameFields(Record other) {
+        return Objects.equals(field1, other.field1) && Objects.equals(field2, other.field2) &&
+               Objects.equals(field3, other.field3) && Objects.equals(field4, other.field4) &&
+               Objects.equals(field5, other.field5);
+    }
+
     @Override
     public String toString() {
         return String.join(", ", field1, field2, field3, field4, field5);
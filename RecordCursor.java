@@ -0,0 +1,116 @@
+import java.io.*;
+import java.util.*;
+
+// Forward-only reader over a CSVDatabase file that holds one row at a time, for
+// one-pass jobs on files too big to load. Malformed rows are skipped and reported
+// like a normal load. Edits in the .changes log are applied as rows go by; only
+// the log itself is held in memory, and a stale log is ignored as a load ignores it. The file is closed at the end of input or on
+// close(), whichever comes first.
+public class RecordCursor implements Iterator<Record>, Closeable {
+    private final String filePath;
+    private final CsvTokenizer tokenizer;
+    private boolean open = true;
+    private Record next;
+    private long row;           // position among well-formed rows in the file
+    private long errors;
+
+    // from the .changes log, in file-row positions
+    private final List<Long> deleted = new ArrayList<>();   // sorted
+    private final Map<Long, Record> updated = new HashMap<>();
+
+    public RecordCursor(String filePath) throws IOException {
+        this.filePath = filePath;
+        readChanges(new File(filePath + ".changes"));
+        this.tokenizer = new CsvTokenizer(new FileReader(filePath));
+    }
+
+    // Change indexes count rows as they stood after earlier changes; map each back
+    // to the row in the file by stepping over rows deleted before it. The log is
+    // left on disk for the next CSVDatabase load to drop.
+    private void readChanges(File file) throws IOException {
+        if (!file.exists()) return;
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(file))) {
+            boolean more = t.next();
+            CSVDatabase.ChangesBase base = more ? CSVDatabase.ChangesBase.parse(t) : null;
+            if (base != null) {
+                if (!base.matches(new File(filePath))) {
+                    System.err.println("Ignoring " + file.getName() + ": it was written against an older " + filePath);
+                    return;
+                }
+                more = t.next();
+            }
+            for (; more; more = t.next()) {
+                try {
+                    long position = t.fieldAsLong(1);
+                    for (long d : deleted) {
+                        if (d <= position) position++;
+                        else break;
+                    }
+                    if (t.fieldEquals(0, "D") && t.fieldCount() == 2) {
+                        int at = Collections.binarySearch(deleted, position);
+                        deleted.add(-at - 1, position);
+                        updated.remove(position);
+                    } else if (t.fieldEquals(0, "U") && t.fieldCount() == 7) {
+                        updated.put(position, new Record(t.field(2), t.field(3), t.field(4), t.field(5), t.field(6)));
+                    } else {
+                        report(t.lineNumber(), "unknown change in " + file.getName());
+                    }
+                } catch (RuntimeException e) {
+                    report(t.lineNumber(), "bad change in " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (!open) return false;
+        try {
+            while (tokenizer.next()) {
+                String error = tokenizer.error();
+                if (error == null && tokenizer.fieldCount() != 5) error = "expected 5 fields, found " + tokenizer.fieldCount();
+                if (error != null) {
+                    report(tokenizer.lineNumber(), error);
+                    continue;
+                }
+                CSVDatabase.ROWS_READ.increment();
+                long position = row++;
+                if (!deleted.isEmpty() && Collections.binarySearch(deleted, position) >= 0) continue;
+                Record update = updated.get(position);
+                next = update != null ? update
+                    : new Record(tokenizer.fieldTrimmed(0), tokenizer.fieldTrimmed(1), tokenizer.fieldTrimmed(2),
+                                 tokenizer.fieldTrimmed(3), tokenizer.fieldTrimmed(4));
+                return true;
+            }
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Record r = next;
+        next = null;
+        return r;
+    }
+
+    // malformed rows skipped so far
+    public long errorCount() { return errors; }
+
+    private void report(long line, String reason) {
+        errors++;
+        System.err.println("Skipping malformed row: " + filePath + " line " + line + ": " + reason);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            tokenizer.close();
+        }
+    }
+}
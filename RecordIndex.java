@@ -0,0 +1,26 @@
+import java.util.List;
+
+// Secondary index over one Record field (1-5, matching field1..field5)
+abstract class RecordIndex {
+    final int field;
+
+    RecordIndex(int field) {
+        if (field < 1 || field > 5) throw new IllegalArgumentException("No such field: " + field);
+        this.field = field;
+    }
+
+    abstract void add(Record r);
+    abstract void remove(Record r);
+    abstract void clear();
+
+    // by field values: columnar storage hands out a new Record per read, and
+    // rows with equal fields are interchangeable within a bucket
+    static void removeSame(List<Record> bucket, Record r) {
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i).sameFields(r)) {
+                bucket.remove(i);
+                return;
+            }
+        }
+    }
+}
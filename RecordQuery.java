@@ -0,0 +1,312 @@
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Fluent query over a CSVDatabase. Fields are numbered 1-5 like Record.field1..field5.
+//
+//   db.query().whereEquals(5, "UK").whereRange(2, "30", "40", true)
+//             .orderBy(2, true, true).limit(10).list();
+//
+// Runs as one stream: the most selective indexed condition (judged by index counts)
+// picks the starting rows, the rest are applied as filters (on columnar tables,
+// straight against the column arrays), and ordering with a limit keeps only the
+// top k in a bounded heap.
+public class RecordQuery {
+    // tables at least this large run in parallel unless parallel(false) is set
+    private static final int PARALLEL_THRESHOLD = 100_000;
+    private static final LatencyHistogram QUERY_TIME = Metrics.timer("csvdb.query");
+
+    private final CSVDatabase db;
+    private final List<Condition> conditions = new ArrayList<>();
+    private Comparator<Record> order;
+    private int[] projection;
+    private long limit = -1;
+    private Boolean parallel;
+
+    RecordQuery(CSVDatabase db) {
+        this.db = db;
+    }
+
+    private static final class Condition {
+        enum Kind { EQUALS, EQUALS_IGNORE_CASE, PREFIX, RANGE }
+
+        final int field;
+        final Kind kind;
+        final String value;      // EQUALS*, PREFIX, RANGE lower bound (null = open)
+        final String upper;      // RANGE upper bound (null = open)
+        final boolean numeric;   // RANGE compares as numbers
+        final String folded;
+        final double lo, hi;
+
+        Condition(int field, Kind kind, String value, String upper, boolean numeric) {
+            if (field < 1 || field > 5) throw new IllegalArgumentException("No such field: " + field);
+            this.field = field;
+            this.kind = kind;
+            this.value = value;
+            this.upper = upper;
+            this.numeric = numeric;
+            this.folded = value == null ? null : value.toLowerCase(Locale.ROOT);
+            this.lo = numeric && value != null ? Double.parseDouble(value) : Double.NEGATIVE_INFINITY;
+            this.hi = numeric && upper != null ? Double.parseDouble(upper) : Double.POSITIVE_INFINITY;
+        }
+
+        boolean test(String v) {
+            if (v == null) return false;
+            return switch (kind) {
+                case EQUALS -> v.equals(value);
+                case EQUALS_IGNORE_CASE -> v.equalsIgnoreCase(value);
+                case PREFIX -> v.regionMatches(true, 0, value, 0, value.length());
+                case RANGE -> numeric ? testNumber(v) : testText(v);
+            };
+        }
+
+        boolean test(int v) {
+            if (kind == Kind.RANGE && numeric) return v >= lo && v <= hi;
+            return test(String.valueOf(v));
+        }
+
+        private boolean testNumber(String v) {
+            try {
+                double d = Double.parseDouble(v.trim());
+                return d >= lo && d <= hi;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        // case-insensitive, like the text sorted index
+        private boolean testText(String v) {
+            String f = v.toLowerCase(Locale.ROOT);
+            return (value == null || f.compareTo(folded) >= 0) &&
+                   (upper == null || f.compareTo(upper.toLowerCase(Locale.ROOT)) <= 0);
+        }
+    }
+
+    public RecordQuery whereEquals(int field, String value) {
+        conditions.add(new Condition(field, Condition.Kind.EQUALS, value, null, false));
+        return this;
+    }
+
+    public RecordQuery whereEqualsIgnoreCase(int field, String value) {
+        conditions.add(new Condition(field, Condition.Kind.EQUALS_IGNORE_CASE, value, null, false));
+        return this;
+    }
+
+    // case-insensitive
+    public RecordQuery wherePrefix(int field, String prefix) {
+        conditions.add(new Condition(field, Condition.Kind.PREFIX, prefix, null, false));
+        return this;
+    }
+
+    // inclusive; null bounds are open. Text ranges are case-insensitive.
+    public RecordQuery whereRange(int field, String from, String to, boolean numeric) {
+        conditions.add(new Condition(field, Condition.Kind.RANGE, from, to, numeric));
+        return this;
+    }
+
+    // may be called more than once; later calls break ties
+    public RecordQuery orderBy(int field, boolean numeric, boolean descending) {
+        Comparator<Record> c = numeric
+            ? Comparator.comparingDouble(r -> numberOrNaN(r.get(field)))
+            : Comparator.comparing(r -> r.get(field), String.CASE_INSENSITIVE_ORDER);
+        if (descending) c = c.reversed();
+        order = order == null ? c : order.thenComparing(c);
+        return this;
+    }
+
+    public RecordQuery limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    // fields returned by rows(), in this order
+    public RecordQuery select(int... fields) {
+        for (int f : fields) if (f < 1 || f > 5) throw new IllegalArgumentException("No such field: " + f);
+        this.projection = fields.clone();
+        return this;
+    }
+
+    public RecordQuery parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    // matching records, ordered and limited. Lazy until a terminal operation runs,
+    // except with both orderBy and limit: the top k are then collected here.
+    public Stream<Record> stream() {
+        Stream<Record> s = filtered();
+        if (order != null && limit >= 0) {
+            return topK(s).stream();
+        }
+        if (order != null) s = s.sorted(order);
+        if (limit >= 0) s = s.limit(limit);
+        return s;
+    }
+
+    public List<Record> list() {
+        long start = System.nanoTime();
+        try {
+            return stream().collect(Collectors.toList());
+        } finally {
+            QUERY_TIME.recordSince(start);
+        }
+    }
+
+    public List<String[]> rows() {
+        long start = System.nanoTime();
+        try {
+            int[] fields = projection != null ? projection : new int[] { 1, 2, 3, 4, 5 };
+            return stream().map(r -> {
+                String[] row = new String[fields.length];
+                for (int i = 0; i < fields.length; i++) row[i] = r.get(fields[i]);
+                return row;
+            }).collect(Collectors.toList());
+        } finally {
+            QUERY_TIME.recordSince(start);
+        }
+    }
+
+    public long count() {
+        long start = System.nanoTime();
+        try {
+            return filtered().count();
+        } finally {
+            QUERY_TIME.recordSince(start);
+        }
+    }
+
+    // matching records per value of field, largest group first
+    public Map<String, Long> countBy(int field) {
+        long start = System.nanoTime();
+        try {
+            Map<String, Long> counts = filtered().collect(Collectors.groupingByConcurrent(r -> r.get(field), Collectors.counting()));
+            Map<String, Long> sorted = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                  .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                  .forEachOrdered(e -> sorted.put(e.getKey(), e.getValue()));
+            return sorted;
+        } finally {
+            QUERY_TIME.recordSince(start);
+        }
+    }
+
+    // bounded heap holding the best k records seen; mergeable for parallel streams
+    private List<Record> topK(Stream<Record> s) {
+        int k = (int) Math.min(limit, Integer.MAX_VALUE - 1);
+        Comparator<Record> worstFirst = order.reversed();
+        Supplier<PriorityQueue<Record>> heap = () -> new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), worstFirst);
+        PriorityQueue<Record> best = s.collect(heap,
+            (q, r) -> offer(q, r, k),
+            (q1, q2) -> { for (Record r : q2) offer(q1, r, k); });
+        List<Record> result = new ArrayList<>(best);
+        result.sort(order);
+        return result;
+    }
+
+    private void offer(PriorityQueue<Record> q, Record r, int k) {
+        if (k == 0) return;
+        if (q.size() < k) q.add(r);
+        else if (order.compare(r, q.peek()) < 0) {
+            q.poll();
+            q.add(r);
+        }
+    }
+
+    private Stream<Record> filtered() {
+        List<Record> records = db.records();
+        Condition driver = null;
+        int best = Integer.MAX_VALUE;
+        for (Condition c : conditions) {
+            int estimate = indexCount(c, best);
+            if (estimate >= 0 && (driver == null || estimate < best)) {
+                best = estimate;
+                driver = c;
+            }
+        }
+        // only the chosen condition's rows are gathered
+        List<Record> candidates = driver == null ? null : fromIndex(driver);
+
+        List<Condition> rest = new ArrayList<>(conditions);
+        if (driver != null) rest.remove(driver);
+        boolean runParallel = parallel != null ? parallel
+            : (candidates != null ? candidates.size() : records.size()) >= PARALLEL_THRESHOLD;
+
+        Stream<Record> s;
+        if (candidates != null) {
+            s = runParallel ? candidates.parallelStream() : candidates.stream();
+            if (!rest.isEmpty()) s = s.filter(r -> matches(rest, r));
+        } else if (records instanceof ColumnarRecords columns) {
+            // test the column arrays first; only matching rows become Records
+            IntStream rows = IntStream.range(0, columns.size());
+            if (runParallel) rows = rows.parallel();
+            if (!rest.isEmpty()) rows = rows.filter(row -> matches(rest, columns, row));
+            s = rows.mapToObj(columns::get);
+        } else {
+            s = runParallel ? records.parallelStream() : records.stream();
+            if (!rest.isEmpty()) s = s.filter(r -> matches(rest, r));
+        }
+        return s;
+    }
+
+    // rows fromIndex would return, counted no further than past stopAfter; -1 if no index fits
+    private int indexCount(Condition c, int stopAfter) {
+        switch (c.kind) {
+            case EQUALS, EQUALS_IGNORE_CASE -> {
+                HashRecordIndex index = db.findHashIndex(c.field, c.kind == Condition.Kind.EQUALS_IGNORE_CASE);
+                return index == null ? -1 : index.count(c.value);
+            }
+            case PREFIX -> {
+                SortedRecordIndex<?> index = db.findSortedIndex(c.field);
+                return index == null || !index.isText() ? -1 : index.prefixCount(c.value, stopAfter);
+            }
+            default -> {
+                SortedRecordIndex<?> index = db.findSortedIndex(c.field);
+                return index == null || index.isText() == c.numeric ? -1 : index.rangeCount(c.value, c.upper, stopAfter);
+            }
+        }
+    }
+
+    // rows for a condition straight from an index, or null if none fits
+    private List<Record> fromIndex(Condition c) {
+        switch (c.kind) {
+            case EQUALS, EQUALS_IGNORE_CASE -> {
+                HashRecordIndex index = db.findHashIndex(c.field, c.kind == Condition.Kind.EQUALS_IGNORE_CASE);
+                return index == null ? null : index.get(c.value);
+            }
+            case PREFIX -> {
+                SortedRecordIndex<?> index = db.findSortedIndex(c.field);
+                return index == null || !index.isText() ? null : index.prefix(c.value);
+            }
+            default -> {
+                SortedRecordIndex<?> index = db.findSortedIndex(c.field);
+                return index == null || index.isText() == c.numeric ? null : index.range(c.value, c.upper);
+            }
+        }
+    }
+
+    private static boolean matches(List<Condition> conditions, Record r) {
+        for (Condition c : conditions) if (!c.test(r.get(c.field))) return false;
+        return true;
+    }
+
+    private static boolean matches(List<Condition> conditions, ColumnarRecords columns, int row) {
+        for (Condition c : conditions) {
+            int column = c.field - 1;
+            boolean ok = columns.type(column) == RecordSchema.ColumnType.INT && columns.isPlainInt(column, row)
+                ? c.test(columns.intValue(column, row))
+                : c.test(columns.value(column, row));
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    private static double numberOrNaN(String v) {
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
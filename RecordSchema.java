@@ -0,0 +1,24 @@
+// Optional column types for CSVDatabase. With a schema, records are held in
+// typed columns (see ColumnarRecords) instead of one Record object per row.
+public class RecordSchema {
+    public enum ColumnType {
+        TEXT,         // plain strings
+        INT,          // primitive int; rows that don't parse are reported as malformed
+        DICTIONARY    // low-cardinality strings, stored as int codes into a shared dictionary
+    }
+
+    private final ColumnType[] types;
+
+    public RecordSchema(ColumnType field1, ColumnType field2, ColumnType field3, ColumnType field4, ColumnType field5) {
+        this.types = new ColumnType[] { field1, field2, field3, field4, field5 };
+    }
+
+    // name, age, job title, city, country: the layout Main works with
+    public static RecordSchema people() {
+        return new RecordSchema(ColumnType.TEXT, ColumnType.INT, ColumnType.DICTIONARY,
+                                ColumnType.DICTIONARY, ColumnType.DICTIONARY);
+    }
+
+    // 0-based column
+    ColumnType type(int column) { return types[column]; }
+}
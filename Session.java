@@ -0,0 +1,31 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+// One logged-in client of Banking. Sessions of the same user share one account map,
+// so updates made through either are seen by both.
+public class Session {
+    private final String token = UUID.randomUUID().toString();
+    private final String username;
+    private final Map<String, Account> accounts;
+    private volatile boolean closed;   // a closed session's accounts may be released and reused
+    private volatile long lastUsed = System.nanoTime();
+
+    Session(String username, Map<String, Account> accounts) {
+        this.username = username;
+        this.accounts = accounts;
+    }
+
+    public String getToken() { return token; }
+    public String getUsername() { return username; }
+
+    Account getAccount(String accNo) { return accNo == null || closed ? null : accounts.get(accNo); }
+    Collection<Account> getAccounts() { return accounts.values(); }
+    Map<String, Account> accountMap() { return accounts; }
+
+    void touch() { lastUsed = System.nanoTime(); }
+    long idleNanos() { return System.nanoTime() - lastUsed; }
+
+    void close() { closed = true; }
+    boolean isClosed() { return closed; }
+}
@@ -0,0 +1,188 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// accounts.csv split into N shard files by a hash of the username, so loading or
+// saving one user touches a single shard. Shard files are named
+// <base>-<count>-<index>.csv; <base>.shards names the live shard count, so a
+// rebalance writes the new set completely before switching over to it.
+//
+// An open store holds an exclusive lock on <base>.lock until closed, so a second
+// process (say the rebalance CLI next to a running server) fails to open the shards
+// rather than rewriting them underneath the first.
+class ShardedAccountStore implements AccountStore, Closeable {
+    private final String baseName;
+    private final File manifest;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel lockChannel;
+    private final FileLock ownerLock;
+    private CsvAccountStore[] shards;
+
+    // opens the live shard set, creating one with initialShards shards (seeded
+    // from seed when it exists) if there is none yet
+    ShardedAccountStore(String baseName, int initialShards, CsvAccountStore seed) throws IOException {
+        this.baseName = baseName;
+        this.manifest = new File(baseName + ".shards");
+        this.lockChannel = FileChannel.open(Paths.get(baseName + ".lock"),
+                                            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock owner;
+        try {
+            owner = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            owner = null;   // held by another store in this process
+        }
+        if (owner == null) {
+            lockChannel.close();
+            throw new IOException("Shards " + baseName + " are in use by another store");
+        }
+        this.ownerLock = owner;
+        try {
+            if (manifest.exists()) {
+                shards = open(readManifest());
+            } else {
+                List<AccountRow> rows = seed != null && seed.getFile().exists() ? seed.load(null) : List.of();
+                shards = write(initialShards, rows);
+                writeManifest(initialShards);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!lockChannel.isOpen()) return;
+        ownerLock.release();
+        lockChannel.close();
+    }
+
+    int shardCount() { return shards.length; }
+
+    static int shardOf(String username, int shardCount) {
+        return Math.floorMod(username.hashCode(), shardCount);
+    }
+
+    @Override
+    public List<AccountRow> load(String username) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (username != null) return shards[shardOf(username, shards.length)].load(username);
+            List<AccountRow> rows = new ArrayList<>();
+            for (CsvAccountStore shard : shards) rows.addAll(shard.load(null));
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(AccountChange change) throws IOException {
+        saveAll(List.of(change));
+    }
+
+    // one rewrite per shard touched
+    @Override
+    public void saveAll(List<AccountChange> changes) throws IOException {
+        lock.readLock().lock();
+        try {
+            Map<Integer, List<AccountChange>> byShard = new TreeMap<>();
+            for (AccountChange change : changes) {
+                byShard.computeIfAbsent(shardOf(change.username, shards.length), k -> new ArrayList<>()).add(change);
+            }
+            for (Map.Entry<Integer, List<AccountChange>> e : byShard.entrySet()) {
+                shards[e.getKey()].saveAll(e.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Redistribute every row over newCount shards. The old set stays live until
+    // the new one is fully written and the manifest points at it.
+    void rebalance(int newCount) throws IOException {
+        if (newCount < 1) throw new IllegalArgumentException("Shard count must be positive");
+        lock.writeLock().lock();
+        try {
+            int oldCount = shards.length;
+            if (newCount == oldCount) return;
+            List<AccountRow> rows = new ArrayList<>();
+            for (CsvAccountStore shard : shards) rows.addAll(shard.load(null));
+            CsvAccountStore[] next = write(newCount, rows);
+            writeManifest(newCount);
+            shards = next;
+            for (int i = 0; i < oldCount; i++) Files.deleteIfExists(shardFile(oldCount, i).toPath());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // rows per shard
+    int[] shardSizes() throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] sizes = new int[shards.length];
+            for (int i = 0; i < shards.length; i++) sizes[i] = shards[i].load(null).size();
+            return sizes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CsvAccountStore[] open(int count) {
+        CsvAccountStore[] result = new CsvAccountStore[count];
+        for (int i = 0; i < count; i++) result[i] = new CsvAccountStore(shardFile(count, i).getPath());
+        return result;
+    }
+
+    private CsvAccountStore[] write(int count, List<AccountRow> rows) throws IOException {
+        List<List<AccountRow>> split = new ArrayList<>();
+        for (int i = 0; i < count; i++) split.add(new ArrayList<>());
+        for (AccountRow row : rows) split.get(shardOf(row.username, count)).add(row);
+        CsvAccountStore[] result = open(count);
+        for (int i = 0; i < count; i++) result[i].writeAll(split.get(i));
+        return result;
+    }
+
+    private File shardFile(int count, int index) {
+        return new File(baseName + "-" + count + "-" + index + ".csv");
+    }
+
+    private int readManifest() throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(manifest))) {
+            return Integer.parseInt(br.readLine().trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Corrupt shard manifest " + manifest, e);
+        }
+    }
+
+    private void writeManifest(int count) throws IOException {
+        File tmp = new File(manifest.getPath() + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(tmp))) {
+            pw.println(count);
+        }
+        Files.move(tmp.toPath(), manifest.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // java ShardedAccountStore stats
+    // java ShardedAccountStore rebalance <count>
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("stats") || (args[0].equals("rebalance") && args.length == 2))) {
+            System.out.println("usage: ShardedAccountStore stats | rebalance <count>");
+            return;
+        }
+        try (ShardedAccountStore store = new ShardedAccountStore("accounts", 8, new CsvAccountStore("accounts.csv"))) {
+            if (args[0].equals("rebalance")) {
+                store.rebalance(Integer.parseInt(args[1]));
+                System.out.println("Rebalanced to " + store.shardCount() + " shards");
+            }
+            int[] sizes = store.shardSizes();
+            for (int i = 0; i < sizes.length; i++) System.out.println("shard " + i + ": " + sizes[i] + " accounts");
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// Account type with a £1,000 overdraft
+class SmallBusinessAccount extends Account {
+    static final double OVERDRAFT_LIMIT = 1000.0;
+
+    public SmallBusinessAccount(AccountTable table, String accNo) { super(table, accNo, AccountTable.SMALL_BUSINESS, OVERDRAFT_LIMIT); }
+}
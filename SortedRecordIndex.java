@@ -0,0 +1,110 @@
+import java.util.*;
+import java.util.function.Function;
+
+// Ordered index for range and prefix queries. Records with a null field are left
+// out, as are, in numeric indexes, records whose field doesn't parse as a number.
+class SortedRecordIndex<K extends Comparable<K>> extends RecordIndex {
+    private final Function<String, K> keyOf;
+    private final boolean text;
+    private final TreeMap<K, List<Record>> tree = new TreeMap<>();
+
+    private SortedRecordIndex(int field, boolean text, Function<String, K> keyOf) {
+        super(field);
+        this.text = text;
+        this.keyOf = keyOf;
+    }
+
+    static SortedRecordIndex<String> text(int field, boolean ignoreCase) {
+        return new SortedRecordIndex<>(field, true, v -> v == null || !ignoreCase ? v : v.toLowerCase(Locale.ROOT));
+    }
+
+    static SortedRecordIndex<Double> numeric(int field) {
+        return new SortedRecordIndex<>(field, false, v -> {
+            if (v == null) return null;
+            try {
+                return Double.valueOf(v.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        });
+    }
+
+    boolean isText() { return text; }
+
+    @Override
+    void add(Record r) {
+        K key = keyOf.apply(r.get(field));
+        if (key != null) tree.computeIfAbsent(key, k -> new ArrayList<>()).add(r);
+    }
+
+    @Override
+    void remove(Record r) {
+        K key = keyOf.apply(r.get(field));
+        if (key == null) return;
+        List<Record> bucket = tree.get(key);
+        if (bucket == null) return;
+        removeSame(bucket, r);
+        if (bucket.isEmpty()) tree.remove(key);
+    }
+
+    @Override
+    void clear() { tree.clear(); }
+
+    // inclusive bounds; a null bound is open
+    List<Record> range(String from, String to) {
+        return flatten(rangeView(from, to));
+    }
+
+    // text indexes only; callers fall back to a scan for numeric ones
+    List<Record> prefix(String prefix) {
+        return flatten(prefixView(prefix));
+    }
+
+    // how many records range() would return, counting no further than past stopAfter
+    int rangeCount(String from, String to, int stopAfter) {
+        return count(rangeView(from, to), stopAfter);
+    }
+
+    int prefixCount(String prefix, int stopAfter) {
+        return count(prefixView(prefix), stopAfter);
+    }
+
+    private NavigableMap<K, List<Record>> rangeView(String from, String to) {
+        K lo = from == null ? null : keyOf.apply(from);
+        K hi = to == null ? null : keyOf.apply(to);
+        if ((from != null && lo == null) || (to != null && hi == null)) {
+            throw new IllegalArgumentException("Bounds must be numbers for a numeric index");
+        }
+        if (lo != null && hi != null) {
+            return lo.compareTo(hi) > 0 ? Collections.emptyNavigableMap() : tree.subMap(lo, true, hi, true);
+        } else if (lo != null) {
+            return tree.tailMap(lo, true);
+        } else if (hi != null) {
+            return tree.headMap(hi, true);
+        }
+        return tree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private NavigableMap<K, List<Record>> prefixView(String prefix) {
+        if (!text) throw new IllegalStateException("Prefix queries need a text index");
+        K lo = keyOf.apply(prefix);
+        K hi = (K) (lo.toString() + Character.MAX_VALUE);   // K is String for text indexes
+        return tree.subMap(lo, true, hi, false);
+    }
+
+    private static <K> int count(NavigableMap<K, List<Record>> view, int stopAfter) {
+        int n = 0;
+        for (List<Record> bucket : view.values()) {
+            n += bucket.size();
+            if (n > stopAfter) break;
+        }
+        return n;
+    }
+
+    private static <K> List<Record> flatten(NavigableMap<K, List<Record>> view) {
+        List<Record> result = new ArrayList<>();
+        for (List<Record> bucket : view.values()) result.addAll(bucket);
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+// Generated users.csv / accounts.csv / CSVDatabase files for benchmarks and load
+// tests. User i is "user<i>" with password "pw<i>". The fixed layout (accountsPerUser
+// = k) gives user i ACC(1001 + i*k) .. ACC(1001 + i*k + k-1), one of each type in
+// order; the mixed layout draws each user's types and joint accounts at random.
+class SyntheticData {
+    static final String[] TYPES = {"SmallBusinessAccount", "CommunityAccount", "ClientAccount"};
+    private static final String[] COUNTRIES = {"UK", "France", "Germany", "Spain", "Italy", "Ireland"};
+
+    private SyntheticData() {}
+
+    static String username(int user) { return "user" + user; }
+    static String password(int user) { return "pw" + user; }
+
+    static String accountNumber(int user, int accountsPerUser, int k) {
+        return "ACC" + (1001 + (long) user * accountsPerUser + k);
+    }
+
+    static void writeUsers(File file, int users) throws IOException {
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            w.write("username,password\n");
+            for (int i = 0; i < users; i++) w.write(username(i) + "," + password(i) + "\n");
+        }
+    }
+
+    // balances are whole pounds in [0, 1000), so totals add up exactly
+    static void writeAccounts(File file, int users, int accountsPerUser, long seed) throws IOException {
+        if (accountsPerUser < 1 || accountsPerUser > TYPES.length) {
+            throw new IllegalArgumentException("accountsPerUser must be 1-" + TYPES.length);
+        }
+        Random random = new Random(seed);
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            w.write(CsvAccountStore.HEADER + "\n");
+            for (int i = 0; i < users; i++) {
+                for (int k = 0; k < accountsPerUser; k++) {
+                    w.write(username(i) + "," + accountNumber(i, accountsPerUser, k) + "," + TYPES[k] + "," +
+                            random.nextInt(1000) + ".0,false,\n");
+                }
+            }
+        }
+    }
+
+    // Each user holds type t with probability typeShare[t] (at least one account, at
+    // most one per type, as Banking allows); each account is joint with probability
+    // jointShare. Returns the number of accounts written.
+    static long writeAccounts(File file, int users, double[] typeShare, double jointShare, long seed) throws IOException {
+        if (typeShare.length != TYPES.length) throw new IllegalArgumentException("need " + TYPES.length + " type shares");
+        Random random = new Random(seed);
+        long next = 1001, written = 0;
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            w.write(CsvAccountStore.HEADER + "\n");
+            for (int i = 0; i < users; i++) {
+                boolean any = false;
+                for (int t = 0; t < TYPES.length; t++) {
+                    boolean last = t == TYPES.length - 1;
+                    if (random.nextDouble() >= typeShare[t] && (any || !last)) continue;
+                    any = true;
+                    boolean joint = random.nextDouble() < jointShare;
+                    w.write(username(i) + ",ACC" + next++ + "," + TYPES[t] + "," + random.nextInt(1000) + ".0," +
+                            joint + "," + (joint ? "Partner" + random.nextInt(users) : "") + "\n");
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    // CSVDatabase rows Name<i>,<age>,Job<n>,City<n>,<country>, matching RecordSchema.people()
+    static void writeRecords(File file, int records, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < records; i++) {
+                w.write("Name" + i + "," + (18 + random.nextInt(70)) + ",Job" + random.nextInt(200) +
+                        ",City" + random.nextInt(1000) + "," + COUNTRIES[random.nextInt(COUNTRIES.length)] + "\n");
+            }
+        }
+    }
+
+    // java SyntheticData <dir> <users> [--types 0.6,0.4,0.8] [--joint 0.05] [--records N] [--seed S]
+    // writes <dir>/users.csv and <dir>/accounts.csv, and <dir>/records.csv if --records is given
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: SyntheticData <dir> <users> [--types small,community,client] [--joint share] [--records N] [--seed S]");
+            return;
+        }
+        File dir = new File(args[0]);
+        int users = Integer.parseInt(args[1]);
+        double[] types = {0.6, 0.4, 0.8};
+        double joint = 0.05;
+        int records = 0;
+        long seed = 42;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--types" -> types = Arrays.stream(args[i + 1].split(",")).mapToDouble(Double::parseDouble).toArray();
+                case "--joint" -> joint = Double.parseDouble(args[i + 1]);
+                case "--records" -> records = Integer.parseInt(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        writeUsers(new File(dir, "users.csv"), users);
+        long accounts = writeAccounts(new File(dir, "accounts.csv"), users, types, joint, seed);
+        if (records > 0) writeRecords(new File(dir, "records.csv"), records, seed);
+        System.out.println("Wrote " + users + " users, " + accounts + " accounts" +
+                           (records > 0 ? ", " + records + " records" : "") + " to " + dir);
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// Every posted deposit, withdrawal and transfer leg, per account and in time order.
+// Entries are fixed-size records appended to one log file. Each links back to the
+// previous entry of its account and carries the balance it left behind.
+//
+// Memory holds one head per account (its newest entry), not the history, plus a
+// sparse time index: the time and position of every STRIDE-th entry. A page is a
+// binary search of that index for each end of the date range, a walk back of at
+// most STRIDE records to the exact entry, then the page itself, whatever the
+// length of the account's history.
+//
+// <log>.index holds the heads, their time indexes and how much of the log they
+// cover, so opening the log only scans what was written after it. It is rewritten
+// on close and every INDEX_EVERY records.
+//
+// Record (48 bytes): time long | amountMinor long | balanceMinor long |
+//   previous record of the account long (-1 = none) | account int | counterparty int (0 = none) |
+//   op byte | pad[7]
+// Accounts are stored by AccountTable.numberOf. amountMinor is signed (negative for
+// money out). Times are epoch millis, never decreasing per account.
+class TransactionHistory implements Closeable {
+    static final class Entry {
+        final long time;
+        final AccountChange.Op op;
+        final long amountMinor;
+        final long balanceMinor;
+        final String counterparty;
+
+        Entry(long time, AccountChange.Op op, long amountMinor, long balanceMinor, String counterparty) {
+            this.time = time;
+            this.op = op;
+            this.amountMinor = amountMinor;
+            this.balanceMinor = balanceMinor;
+            this.counterparty = counterparty;
+        }
+    }
+
+    // one page of a statement, newest first, plus the number of entries in the range
+    static final class Page {
+        final int total;
+        final List<Entry> entries;
+
+        Page(int total, List<Entry> entries) {
+            this.total = total;
+            this.entries = entries;
+        }
+    }
+
+    private static final AccountChange.Op[] OPS = AccountChange.Op.values();
+    private static final int RECORD_SIZE = 48;
+    private static final int REC_AMOUNT = 8, REC_BALANCE = 16, REC_PREVIOUS = 24, REC_ACCOUNT = 32,
+                             REC_COUNTERPARTY = 36, REC_OP = 40;
+    private static final long INDEX_EVERY = 1 << 20;
+    private static final int INDEX_MAGIC = 0x54584932;   // "TXI2"; older indexes are rebuilt by a scan
+    private static final int STRIDE = 64;
+
+    // newest entry of one account, plus its time index: checkpoint i is the entry
+    // numbered (i + 1) * STRIDE, counting from 0
+    private static final class Head {
+        long record = -1;   // byte position in the log
+        int count;
+        long time;
+        long balance;
+        long[] checkpointTimes, checkpointRecords;
+        int checkpoints;
+
+        void add(long record, long time, long balance) {
+            if (count > 0 && count % STRIDE == 0) addCheckpoint(time, record);
+            this.record = record;
+            this.time = time;
+            this.balance = balance;
+            count++;
+        }
+
+        void addCheckpoint(long time, long record) {
+            if (checkpointTimes == null) {
+                checkpointTimes = new long[4];
+                checkpointRecords = new long[4];
+            } else if (checkpoints == checkpointTimes.length) {
+                checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoints * 2);
+                checkpointRecords = Arrays.copyOf(checkpointRecords, checkpoints * 2);
+            }
+            checkpointTimes[checkpoints] = time;
+            checkpointRecords[checkpoints] = record;
+            checkpoints++;
+        }
+    }
+
+    // a head as of one moment; records up to it never change, so it is read without the lock
+    private static final class Chain {
+        final long record;
+        final int count;
+        final long time;
+        final long[] checkpointTimes, checkpointRecords;
+        final int checkpoints;
+
+        Chain(Head head) {
+            record = head.record;
+            count = head.count;
+            time = head.time;
+            checkpointTimes = head.checkpointTimes;
+            checkpointRecords = head.checkpointRecords;
+            checkpoints = head.checkpoints;
+        }
+    }
+
+    private final File indexFile;
+    private final boolean fsync;
+    private final FileChannel channel;
+
+    // guarded by this
+    private final Map<Integer, Head> heads = new HashMap<>();
+    private long end;
+    private long indexedTo;
+
+    // group fsync: one force covers every record written before it started
+    private final Object syncLock = new Object();
+    private long syncedTo;   // guarded by syncLock
+    private volatile long writtenTo;
+
+    // fsync: force records to disk before record returns
+    TransactionHistory(String fileName, boolean fsync) throws IOException {
+        this.indexFile = new File(fileName + ".index");
+        this.fsync = fsync;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // a torn final record is dropped
+        end = channel.size() / RECORD_SIZE * RECORD_SIZE;
+        channel.truncate(end);
+        indexedTo = readIndex();
+        scan(indexedTo);
+        writtenTo = syncedTo = end;
+    }
+
+    // Record the money movements of applied changes; CREATE is skipped, as are ADJUST
+    // rows that moved nothing. Callers hold the changed accounts' locks, so each
+    // account's entries arrive in the order its balance changed.
+    //
+    // An ADJUST whose balance the account's newest entry already shows was recorded
+    // before a crash and is being replayed, so it is dropped.
+    void record(List<AccountChange> changes) throws IOException {
+        ByteBuffer buf = null;
+        for (AccountChange change : changes) {
+            long amount = AccountTable.toMinor(change.amount);
+            switch (change.op) {
+                case DEPOSIT -> buf = put(buf, change, 0, amount, null);
+                case WITHDRAW -> buf = put(buf, change, 0, -amount, null);
+                case TRANSFER -> {
+                    buf = put(buf, change, 0, -amount, change.accountNumbers[1]);
+                    buf = put(buf, change, 1, amount, change.accountNumbers[0]);
+                }
+                case ADJUST -> {
+                    for (int i = 0; i < change.accountNumbers.length; i++) {
+                        if (change.adjustmentsMinor[i] != 0) buf = put(buf, change, i, change.adjustmentsMinor[i], null);
+                    }
+                }
+                default -> { }
+            }
+        }
+        if (buf != null) append(buf);
+    }
+
+    // one record, account and time still to be linked in by append
+    private static ByteBuffer put(ByteBuffer buf, AccountChange change, int leg, long amount, String counterparty) {
+        if (buf == null) buf = ByteBuffer.allocate(RECORD_SIZE * 4);
+        if (buf.remaining() < RECORD_SIZE) {
+            ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+        int pos = buf.position();
+        buf.putLong(pos + REC_AMOUNT, amount);
+        buf.putLong(pos + REC_BALANCE, AccountTable.toMinor(change.balances[leg]));
+        buf.putInt(pos + REC_ACCOUNT, AccountTable.numberOf(change.accountNumbers[leg]));
+        buf.putInt(pos + REC_COUNTERPARTY, counterparty == null ? 0 : AccountTable.numberOf(counterparty));
+        buf.put(pos + REC_OP, (byte) change.op.ordinal());
+        buf.position(pos + RECORD_SIZE);
+        return buf;
+    }
+
+    // stamps time and back links, writes the records in one go, then syncs outside the lock
+    private void append(ByteBuffer buf) throws IOException {
+        int limit = buf.position();
+        long now = System.currentTimeMillis();
+        long writeEnd;
+        synchronized (this) {
+            long start = end;
+            int out = 0;
+            for (int in = 0; in < limit; in += RECORD_SIZE) {
+                int account = buf.getInt(in + REC_ACCOUNT);
+                Head head = heads.get(account);
+                if (buf.get(in + REC_OP) == AccountChange.Op.ADJUST.ordinal() && head != null
+                        && head.balance == buf.getLong(in + REC_BALANCE)) {
+                    continue;   // replayed
+                }
+                if (head == null) {
+                    head = new Head();
+                    heads.put(account, head);
+                }
+                int pos = out;
+                if (pos != in) buf.put(pos, buf, in, RECORD_SIZE);
+                out += RECORD_SIZE;
+                long time = head.count > 0 ? Math.max(now, head.time) : now;
+                buf.putLong(pos, time);
+                buf.putLong(pos + REC_PREVIOUS, head.record);
+                head.add(start + pos, time, buf.getLong(pos + REC_BALANCE));
+            }
+            if (out == 0) return;
+            buf.position(0).limit(out);
+            while (buf.hasRemaining()) channel.write(buf, start + buf.position());
+            end = writeEnd = start + out;
+            writtenTo = end;
+            if (end - indexedTo >= INDEX_EVERY * RECORD_SIZE) writeIndex();
+        }
+        if (fsync) syncTo(writeEnd);
+    }
+
+    private void syncTo(long position) throws IOException {
+        synchronized (syncLock) {
+            if (syncedTo >= position) return;   // someone else's force covered it
+            long target = writtenTo;
+            channel.force(false);
+            syncedTo = target;
+        }
+    }
+
+    // Entries of accNo with fromMillis <= time < toMillis, newest first, skipping offset
+    Page statement(String accNo, long fromMillis, long toMillis, int offset, int limit) throws IOException {
+        Chain chain = accNo == null || fromMillis >= toMillis ? null : chain(accNo);
+        if (chain == null) return new Page(0, Collections.emptyList());
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE);
+        int lo = lowerBound(chain, fromMillis, rec);
+        int hi = lowerBound(chain, toMillis, rec);
+        int first = hi - 1 - Math.max(0, offset);
+        int last = Math.max(lo, first - Math.max(0, limit) + 1);
+        if (first < last) return new Page(hi - lo, Collections.emptyList());
+        List<Entry> entries = new ArrayList<>(first - last + 1);
+        long record = seek(chain, first, rec);
+        for (int i = first; i >= last; i--) {
+            read(rec, record);
+            String counterparty = rec.getInt(REC_COUNTERPARTY) == 0 ? null
+                : AccountTable.accountNumberOf(rec.getInt(REC_COUNTERPARTY));
+            entries.add(new Entry(rec.getLong(0), OPS[rec.get(REC_OP)], rec.getLong(REC_AMOUNT),
+                                  rec.getLong(REC_BALANCE), counterparty));
+            record = rec.getLong(REC_PREVIOUS);
+        }
+        return new Page(hi - lo, entries);
+    }
+
+    // null if accNo has no entries
+    private synchronized Chain chain(String accNo) {
+        try {
+            Head head = heads.get(AccountTable.numberOf(accNo));
+            return head == null ? null : new Chain(head);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // number of the first entry at or after time (count if none is)
+    private int lowerBound(Chain chain, long time, ByteBuffer rec) throws IOException {
+        if (time > chain.time) return chain.count;
+        // first checkpoint at or after time; the one before it is known to be earlier
+        int lo = 0, hi = chain.checkpoints;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chain.checkpointTimes[mid] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        int earlier = lo == 0 ? -1 : lo * STRIDE;
+        int n;
+        long record;
+        if (lo < chain.checkpoints) {
+            n = (lo + 1) * STRIDE;
+            record = chain.checkpointRecords[lo];
+        } else {
+            n = chain.count - 1;
+            record = chain.record;
+        }
+        int bound = chain.count;
+        for (; n > earlier; n--) {
+            read(rec, record);
+            if (rec.getLong(0) < time) break;
+            bound = n;
+            record = rec.getLong(REC_PREVIOUS);
+        }
+        return bound;
+    }
+
+    // position of entry n, walking back from the nearest checkpoint (or the head) above it
+    private long seek(Chain chain, int n, ByteBuffer rec) throws IOException {
+        int i = Math.max(0, (n + STRIDE - 1) / STRIDE - 1);
+        int at;
+        long record;
+        if (i < chain.checkpoints) {
+            at = (i + 1) * STRIDE;
+            record = chain.checkpointRecords[i];
+        } else {
+            at = chain.count - 1;
+            record = chain.record;
+        }
+        for (; at > n; at--) {
+            read(rec, record);
+            record = rec.getLong(REC_PREVIOUS);
+        }
+        return record;
+    }
+
+    private void read(ByteBuffer buf, long position) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) throw new EOFException("History log truncated");
+        }
+    }
+
+    // rebuild heads from the records after from
+    private void scan(long from) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        long position = from;
+        while (position < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            while (buf.hasRemaining()) channel.read(buf, position + buf.position());
+            for (int pos = 0; pos < buf.limit(); pos += RECORD_SIZE) {
+                Head head = heads.computeIfAbsent(buf.getInt(pos + REC_ACCOUNT), k -> new Head());
+                head.add(position + pos, buf.getLong(pos), buf.getLong(pos + REC_BALANCE));
+            }
+            position += buf.limit();
+        }
+    }
+
+    // heads as of the returned log position; 0 (scan everything) without a usable index
+    private long readIndex() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) return 0;
+            long covered = in.readLong();
+            if (covered > end) return 0;   // index is from a longer log than this one
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Head head = new Head();
+                int account = in.readInt();
+                head.record = in.readLong();
+                head.count = in.readInt();
+                head.time = in.readLong();
+                head.balance = in.readLong();
+                int checkpoints = in.readInt();
+                for (int c = 0; c < checkpoints; c++) head.addCheckpoint(in.readLong(), in.readLong());
+                heads.put(account, head);
+            }
+            return covered;
+        } catch (IOException e) {
+            heads.clear();
+            return 0;
+        }
+    }
+
+    // caller holds this; the log is forced first so the index never runs ahead of it
+    private void writeIndex() throws IOException {
+        channel.force(false);
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(end);
+            out.writeInt(heads.size());
+            for (Map.Entry<Integer, Head> e : heads.entrySet()) {
+                Head head = e.getValue();
+                out.writeInt(e.getKey());
+                out.writeLong(head.record);
+                out.writeInt(head.count);
+                out.writeLong(head.time);
+                out.writeLong(head.balance);
+                out.writeInt(head.checkpoints);
+                for (int c = 0; c < head.checkpoints; c++) {
+                    out.writeLong(head.checkpointTimes[c]);
+                    out.writeLong(head.checkpointRecords[c]);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexedTo = end;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        if (end > indexedTo) writeIndex();
+        channel.close();
+    }
+}